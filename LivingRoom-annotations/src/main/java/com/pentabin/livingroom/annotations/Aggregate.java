@@ -0,0 +1,42 @@
+package com.pentabin.livingroom.annotations;
+
+import java.lang.annotation.Repeatable;
+
+/**
+ * Generates a method returning a single value computed by SQLite, as a LiveData.
+ * <p>
+ * COUNT returns a Long, EXISTS a Boolean, MIN and MAX the type of the column,
+ * SUM a Long (or a Double for floating point columns) and AVG a Double.
+ * <p>
+ * Example:
+ * <pre>
+ * &#64;Aggregate(methodName = "hasArchived", function = Aggregate.Function.EXISTS, where = "isDeleted = 1")
+ * &#64;Aggregate(methodName = "getLastCreation", function = Aggregate.Function.MAX, column = "created_at")
+ * </pre>
+ */
+@Repeatable(Aggregates.class)
+public @interface Aggregate {
+    enum Function { COUNT, EXISTS, MIN, MAX, SUM, AVG }
+
+    /**
+     *
+     * @return method name that will be generated in Dao, Repository and ViewModel
+     */
+    String methodName();
+
+    Function function();
+
+    /**
+     *
+     * @return the aggregated column, required by MIN, MAX, SUM and AVG. COUNT counts the rows if empty
+     */
+    String column() default "";
+
+    /**
+     *
+     * @return where clause, the non archived items by default. Empty to aggregate the whole table
+     */
+    String where() default "isDeleted = 0";
+
+    String[] params() default {""};
+}
@@ -0,0 +1,23 @@
+package com.pentabin.livingroom.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Keeps the recently loaded and written items of the entity in memory, keyed by id,
+ * so that getById emits the cached item without query.
+ * <p>
+ * The cache is filled by the list selects and by insert and update, and evicted by delete.
+ * When the table is changed by another connection, process or database instance, the cache is cleared
+ * and getById queries the database again.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Cached {
+    /**
+     * @return maximum number of cached items, the least recently used are evicted first
+     */
+    int maxEntries() default 256;
+}
@@ -0,0 +1,23 @@
+package com.pentabin.livingroom.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Buffer the single item writes (insert, update, delete and archive) of the generated Repository
+ * and commit them together in one transaction.
+ * <p>
+ * The buffer is flushed when it holds {@link #maxBatchSize()} writes or when {@link #windowMillis()}
+ * elapsed since the first buffered write, whichever comes first.
+ * Each caller still gets its own result through the returned LivingRoomFuture.
+ * <p>
+ * The batch methods (insertAll, updateAll...) are never buffered.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface CoalesceWrites {
+    int maxBatchSize() default 64;
+    long windowMillis() default 16;
+}
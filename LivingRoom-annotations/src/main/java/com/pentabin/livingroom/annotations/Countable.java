@@ -0,0 +1,17 @@
+package com.pentabin.livingroom.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates count() that returns the number of non archived items as a LiveData Long,
+ * counted by SQLite without loading the rows.
+ * <p>
+ * Use {@link Aggregate} for other counts, exists, min, max, sum and avg queries.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Countable {
+}
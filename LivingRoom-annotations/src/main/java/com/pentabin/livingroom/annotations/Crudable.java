@@ -29,11 +29,14 @@ import java.lang.annotation.Target;
  * <p>
  *     <ul>
  *         <li>insert(item) to insert an item to the database, the timestamp created_at will automatically be set.</li>
+ *         <li>insertAsync(item) same as insert(item) without blocking, returns a LivingRoomFuture of the generated id</li>
  *         <li>update(item) to update an item, the timestamp updated_at will automatically be set. </li>
  *         <li>delete(item) to delete the item permanently</li>
  *         <li>archive(item) to archive the item, will set the field isDeleted to true</li>
  *         <li>getAll() returns the list of all the items in a LiveData List</li>
  *         <li>getById(long id) returns the item with the specific id</li>
+ *         <li>insertAll(items), updateAll(items), deleteAll(items) and archiveAll(items) the batch variants,
+ *         each one runs in a single transaction</li>
  *     </ul>
  * </p>
 
@@ -14,4 +14,33 @@ public @interface DatabaseMeta {
     boolean exportSchema() default true;
     Class<?> databaseCallbacks() default Object.class;
     AutoMigration[] autoMigrations() default {};
+
+    /**
+     * Number of threads running the generated write methods (insert, update, delete, archive).
+     *
+     * @return Size of the write executor, a single writer by default.
+     */
+    int writeThreads() default 1;
+
+    /**
+     * Number of threads running the queries (LiveData refreshes included).
+     *
+     * @return Size of the read executor, 0 to use the number of available cores.
+     */
+    int readThreads() default 0;
+
+    /**
+     * LivingRoom checks that the where clauses of the generated selects can use an index,
+     * and warns at compile time about the missing ones.
+     *
+     * @return true to create the missing indexes when the database is opened instead of warning.
+     */
+    boolean autoIndexes() default false;
+
+    /**
+     * The LiveData returned by the selects with parameters are shared by the calls with the same arguments.
+     *
+     * @return the number of LiveData cached by each repository, 0 to disable the cache.
+     */
+    int liveDataCacheSize() default 64;
 }
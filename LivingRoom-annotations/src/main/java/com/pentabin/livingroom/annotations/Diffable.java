@@ -0,0 +1,23 @@
+package com.pentabin.livingroom.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates the RecyclerView classes that update a list incrementally instead of notifyDataSetChanged():
+ * <ul>
+ *     <li>ClassNameDiffCallback, a DiffUtil.ItemCallback comparing the items by id, then by updated_at and the given fields</li>
+ *     <li>ClassNameListAdapter, an abstract ListAdapter with stable ids, diffing the lists on the read executor</li>
+ * </ul>
+ * The RecyclerView library must be added to the app dependencies.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Diffable {
+    /**
+     * @return the fields also compared by areContentsTheSame, for the items changed without updating updated_at
+     */
+    String[] fields() default {};
+}
@@ -0,0 +1,15 @@
+package com.pentabin.livingroom.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates an Entity + Editor class that records the changed fields of an item, and edit(item) and save(editor)
+ * methods that update only the changed columns, or nothing when no column changed.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Editable {
+}
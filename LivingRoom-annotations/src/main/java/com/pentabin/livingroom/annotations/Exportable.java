@@ -0,0 +1,19 @@
+package com.pentabin.livingroom.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates exportTo(out) and importFrom(in), streaming all the rows of the table as JSON Lines by batches,
+ * for backups or the migration to another device. The imported rows replace the existing rows with the same id.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Exportable {
+    /**
+     * @return the number of rows read by each query of the export, and inserted by each transaction of the import
+     */
+    int batchSize() default 500;
+}
@@ -0,0 +1,24 @@
+package com.pentabin.livingroom.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Keeps a whole copy of a small table in memory, for lookup tables read on every screen and rarely written.
+ * <p>
+ * The generated repository loads the table once on the read executor, then getAll, getById and the
+ * {@link SelectableWhere} methods of the form "key = :param", with a param of the type of the key,
+ * are served from memory without any query.
+ * The writes go through to SQLite and replace the memory copy once done.
+ * The table is reloaded when it is changed by another connection, process or database instance.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface InMemoryTable {
+    /**
+     * @return the columns indexed in memory, in addition to the id
+     */
+    String[] keys() default {};
+}
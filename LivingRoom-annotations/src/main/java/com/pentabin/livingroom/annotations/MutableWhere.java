@@ -0,0 +1,37 @@
+package com.pentabin.livingroom.annotations;
+
+
+import java.lang.annotation.Repeatable;
+
+/**
+ * Generates a method updating or deleting all the rows matching a where clause in a single statement,
+ * without loading them. updated_at is set on the updated rows.
+ */
+@Repeatable(MutableWheres.class)
+public @interface MutableWhere {
+    /**
+     *
+     * @return method name that will be generated in Dao, Repository and ViewModel
+     */
+    String methodName();
+
+    /**
+     *
+     * @return the parameters of the method, for instance {"java.util.Date cutoff"}
+     */
+    String[] params() default {""};
+
+    /**
+     *
+     * @return the SET clause of the update, for instance "isDeleted = 1". Ignored by a delete
+     */
+    String set() default "";
+
+    String where();
+
+    /**
+     *
+     * @return true to delete the matching rows instead of updating them
+     */
+    boolean delete() default false;
+}
@@ -0,0 +1,5 @@
+package com.pentabin.livingroom.annotations;
+
+public @interface MutableWheres {
+    MutableWhere[] value();
+}
@@ -0,0 +1,39 @@
+package com.pentabin.livingroom.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a full-text index of some text columns, kept in sync with the table by triggers,
+ * and a method returning the LiveData of the non archived items matching all the words of a text, as prefixes.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Searchable {
+    /**
+     *
+     * @return the indexed text columns, for instance {"title", "content"}
+     */
+    String[] fields();
+
+    /**
+     *
+     * @return method name that will be generated in Dao, Repository and ViewModel
+     */
+    String methodName() default "search";
+
+    /**
+     *
+     * @return true to return the items matching the words most often first, false to keep the order of @SelectableAll
+     */
+    boolean ranked() default true;
+
+    /**
+     *
+     * @return true to also generate a method returning the items with an html excerpt of their matches,
+     * named after the method name followed by Snippets
+     */
+    boolean snippets() default false;
+}
@@ -1,4 +1,40 @@
 package com.pentabin.livingroom.annotations;
 
 public @interface SelectableAll {
+    /**
+     *
+     * @return the ORDER BY clause of getAll(), also used by getAllProjected() and getAllPaged(). Unordered if empty
+     */
+    String orderBy() default "";
+
+    /**
+     *
+     * @return true to skip the results of getAll() equal to the previous one, compared by id and updated_at off the main thread
+     */
+    boolean distinctUntilChanged() default false;
+
+    /**
+     *
+     * @return true to refresh getAll() by loading only the rows created or updated since the previous list, and the ids of the others
+     */
+    boolean incremental() default false;
+
+    /**
+     *
+     * @return the minimum time between two loads of getAll() and getAllProjected() caused by changes of the table, in milliseconds. The changes made
+     * in between are coalesced into a single load at the end of the interval. 0 to load after each change
+     */
+    long refreshIntervalMillis() default 0;
+
+    /**
+     *
+     * @return the columns loaded by an additional getAllProjected() method, none if empty
+     */
+    String[] columns() default {};
+
+    /**
+     *
+     * @return the simple name of the projection class returned by getAllProjected(), Entity + Projection if empty
+     */
+    String projection() default "";
 }
@@ -0,0 +1,27 @@
+package com.pentabin.livingroom.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates keyset (seek) pagination methods, every page costs the same whatever its position in the table.
+ * <p>
+ *     <ul>
+ *         <li>getPageAfter(long lastId, int limit) returns the next items ordered by id</li>
+ *         <li>getPageBefore(Date createdAt, long id, int limit) returns the previous items,
+ *         newest first, from the created_at and id of the last item of the previous page</li>
+ *     </ul>
+ * </p>
+ * The pages are loaded on the read executor and returned as a LivingRoomFuture of a List.
+ * The matching composite indexes are created by the generated database.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface SelectableKeyset {
+    /**
+     * @return true to also return the archived items, for example to stream the whole table
+     */
+    boolean includeArchived() default false;
+}
@@ -0,0 +1,28 @@
+package com.pentabin.livingroom.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates getAllPaged() that returns the non archived items as a LiveData PagedList
+ * instead of loading the whole table in memory.
+ * <p>
+ * The page configuration also applies to the {@link SelectableWhere} methods marked as paged.
+ * The Dao method returns a DataSource.Factory, so the Paging library must be added to the app dependencies.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface SelectablePaged {
+    /**
+     * @return number of items loaded per page
+     */
+    int pageSize() default 20;
+
+    /**
+     * @return distance from the end of the loaded items at which the next page is loaded,
+     * 0 to use the page size
+     */
+    int prefetchDistance() default 0;
+}
@@ -17,6 +17,49 @@ public @interface SelectableWhere {
     String[] params() default {""};
 
     String where();
+
+    /**
+     *
+     * @return the ORDER BY clause, for instance "created_at DESC, id DESC". Unordered if empty
+     */
+    String orderBy() default "";
+
+    /**
+     *
+     * @return the maximum number of items, a number or a parameter such as ":count". No limit if empty
+     */
+    String limit() default "";
+
+    /**
+     *
+     * @return true to skip the results equal to the previous one, compared by id and updated_at off the main thread
+     */
+    boolean distinctUntilChanged() default false;
+
+    /**
+     *
+     * @return true to return a LiveData PagedList, configured with {@link SelectablePaged} if present
+     */
+    boolean paged() default false;
+
+    /**
+     *
+     * @return the columns to select, all of them if empty. The rows are then returned as an immutable projection class
+     */
+    String[] columns() default {};
+
+    /**
+     *
+     * @return the simple name of the generated projection class, Entity + MethodName + Projection if empty
+     */
+    String projection() default "";
+
+    /**
+     *
+     * @return the minimum time between two loads caused by changes of the table, in milliseconds. The changes made
+     * in between are coalesced into a single load at the end of the interval. 0 to load after each change
+     */
+    long refreshIntervalMillis() default 0;
     // TODO returns? List or One Live or not
     boolean liveData = true;
 }
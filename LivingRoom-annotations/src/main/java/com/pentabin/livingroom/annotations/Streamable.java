@@ -0,0 +1,19 @@
+package com.pentabin.livingroom.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates iterate(where, args) and forEach(where, args, action), walking the rows matching a where clause
+ * by chunks of a fixed size, so that only one chunk is held in memory whatever the size of the table.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Streamable {
+    /**
+     * @return the number of rows loaded by each query
+     */
+    int chunkSize() default 500;
+}
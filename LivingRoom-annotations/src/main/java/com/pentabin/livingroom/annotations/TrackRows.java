@@ -0,0 +1,18 @@
+package com.pentabin.livingroom.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Notifies the getById LiveData only when their row is written, instead of on every change of the table.
+ * <p>
+ * The writes of the repository are pushed to the LiveData of the rows they touched without any query.
+ * When the table is changed by another connection, process or database instance, all the observed rows
+ * are loaded again in a few queries.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface TrackRows {
+}
@@ -0,0 +1,21 @@
+package com.pentabin.livingroom.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates upsert(item) and upsertAll(items), inserting the items that don't exist yet and updating the other ones
+ * in a single transaction on the write executor.
+ * <p>
+ * created_at is only set on the inserted rows, updated_at is set on all of them.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Upsertable {
+    /**
+     * @return the column identifying an existing row, the primary key id if empty. Another column must have a unique index
+     */
+    String key() default "";
+}
@@ -1,20 +1,22 @@
 package com.pentabin.livingroom.compiler;
 
-import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
-import com.squareup.javapoet.TypeName;
-import com.squareup.javapoet.TypeSpec;
+
+import java.util.List;
 
 import javax.lang.model.element.Modifier;
 
+import static com.pentabin.livingroom.compiler.EntityClass.COALESCER_FIELD;
+
 public class AsyncMethod extends LivingroomMethod {
-    // this sub class has only one parameter (item of type Entity)
+    // this sub class has only one parameter (item of type Entity, or items for the batch methods)
 
-    private static final String asyncTaskSuffix = "AsyncTask";
-    private static final String ITEM_PARAM = "item";
+    private static final String ASYNC_SUFFIX = "Async";
+    private String cacheUpdate;
+    static final ClassName FUTURE_CLASS = ClassName.get("com.pentabin.livingroom", "LivingRoomFuture");
 
     AsyncMethod(EntityClass entityClass, String methodName) {
         super(entityClass, methodName);
@@ -28,20 +30,54 @@ public class AsyncMethod extends LivingroomMethod {
         return methodBuilder;
     }
 
-    // Example: InsertEntityAsyncTask;
-    private String asyncTaskClassName(EntityClass entityClass) {
-        return this.getMethodName().substring(0, 1).toUpperCase()
-                + this.getMethodName().substring(1)
-                + entityClass.getName()
-                + asyncTaskSuffix;
+    // Method of the EntityCache, MemoryTable or RowTracker called after the write: inserted, written or removed
+    void setCacheUpdate(String cacheUpdate) {
+        this.cacheUpdate = cacheUpdate;
+    }
+
+    String paramName() {
+        return this.hasParams() ? getParams().keySet().iterator().next() : "";
+    }
+
+    // Example: notedao.insert(item), or rowTracker.write(() -> notedao.insert(item)) if the rows are tracked
+    CodeBlock daoCall(EntityClass entityClass) {
+        return entityClass.trackedWrite(CodeBlock.of("$N.$N($N)",
+                entityClass.getDaoClassName().toLowerCase(),
+                this.getMethodName(),
+                paramName()));
+    }
+
+    // Example: entityCache.inserted(item, notedao.insert(item)), or the dao call alone if the writes are not listened
+    private CodeBlock write(EntityClass entityClass) {
+        List<String> listeners = entityClass.getWriteListenerFields();
+        CodeBlock write = daoCall(entityClass);
+        if (cacheUpdate == null) return write;
+        for (String listener: listeners) {
+            write = this.isReturnVoid()
+                    ? CodeBlock.of("$L; $N.$N($N)", write, listener, cacheUpdate, paramName())
+                    : CodeBlock.of("$N.$N($N, $L)", listener, cacheUpdate, paramName(), write);
+        }
+        return write;
+    }
+
+    // Example: () -> notedao.delete(item)
+    private CodeBlock voidLambda(EntityClass entityClass) {
+        return !entityClass.getWriteListenerFields().isEmpty()
+                ? CodeBlock.of("() -> { $L; }", write(entityClass))
+                : CodeBlock.of("() -> $L", write(entityClass));
     }
 
-    private ParameterizedTypeName getAsyncTaskType() {
-        ClassName asyncTaskClass = ClassName.get("android.os", "AsyncTask");
-        return ParameterizedTypeName.get(asyncTaskClass,
-                this.hasParams()? getParams().get(ITEM_PARAM):TypeName.get(Void.class),
-                ClassName.get(Void.class),
-                this.getReturnType());
+    // Only single item writes are buffered, batch methods already run in their own transaction
+    private boolean isCoalesced(EntityClass entityClass) {
+        return entityClass.isCoalescingWrites()
+                && getParams().containsValue(entityClass.getTypeName());
+    }
+
+    // Example: writeCoalescer.submit(() -> notedao.insert(item))
+    private CodeBlock coalescedCall(EntityClass entityClass) {
+        return this.isReturnVoid()
+                ? CodeBlock.of("$N.submit(() -> { $L; return null; })", COALESCER_FIELD, write(entityClass))
+                : CodeBlock.of("$N.submit(() -> $L)", COALESCER_FIELD, write(entityClass));
     }
 
     @Override
@@ -50,14 +86,27 @@ public class AsyncMethod extends LivingroomMethod {
         CodeBlock.Builder innerCode = CodeBlock.builder();
         if (getPreCode() != null) builder.addCode(this.getPreCode());
 
-        if (this.isReturnVoid())
+        if (isCoalesced(entityClass) && this.isReturnVoid())
+            innerCode.addStatement("$L", coalescedCall(entityClass));
+        else if (isCoalesced(entityClass)) innerCode
+                .beginControlFlow("try")
+                .addStatement("return $L.get()", coalescedCall(entityClass))
+                .nextControlFlow("catch ($T e)", ClassName.get(Throwable.class))
+                .addStatement("e.printStackTrace()")
+                .endControlFlow()
+                .addStatement("return null");
+        // Writes run on the database single writer executor, see DatabaseMeta.writeThreads
+        else if (this.isReturnVoid())
             innerCode
-                    .addStatement("new $N().execute($N)",
-                            asyncTaskClassName(entityClass),
-                            this.hasParams() ? ITEM_PARAM : "");
+                    .addStatement("$L.execute($L)",
+                            entityClass.writeExecutor(),
+                            voidLambda(entityClass));
         else innerCode
                 .beginControlFlow("try")
-                .addStatement("return new $N().execute($N).get()", asyncTaskClassName(entityClass), hasParams() ? ITEM_PARAM : "")
+                .addStatement("return $T.submit($L, () -> $L).get()",
+                        FUTURE_CLASS,
+                        entityClass.writeExecutor(),
+                        write(entityClass))
                 .nextControlFlow("catch ($T e)", ClassName.get(Throwable.class))
                 .addStatement("e.printStackTrace()")
                 .endControlFlow()
@@ -68,29 +117,33 @@ public class AsyncMethod extends LivingroomMethod {
         return builder;
     }
 
-    public TypeSpec.Builder generateAsyncTaskClass(EntityClass entityClass) {
-        final String asyncTaskClassName = asyncTaskClassName(entityClass);
-        String params = this.hasParams() ? "(items[0])" : "()";
-
-        MethodSpec.Builder doInBackground = MethodSpec.methodBuilder("doInBackground")
-                .addModifiers(Modifier.PROTECTED)
-                .addParameter(ArrayTypeName.of(entityClass.getTypeName()), "items").varargs()
-                .addAnnotation(Override.class);
-
-        if (this.isReturnVoid())
-            doInBackground.addStatement(entityClass.getDaoClassName().toLowerCase() + "." + this.getMethodName() + params)
-                    .addStatement("return null");
-        else
-            doInBackground.addStatement("return " + entityClass.getDaoClassName().toLowerCase() + "." + this.getMethodName() + params);
-
-        doInBackground.returns(this.getReturnType());
-
-        TypeSpec.Builder asyncTask = TypeSpec.classBuilder(asyncTaskClassName)
-                .superclass(getAsyncTaskType())
-                .addMethod(doInBackground.build());
+    // Example: LivingRoomFuture<Long> insertAsync(item), the non blocking variant of methods returning a value
+    private MethodSpec.Builder generateAsyncMethod() {
+        MethodSpec.Builder builder = MethodSpec.methodBuilder(this.getMethodName() + ASYNC_SUFFIX)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ParameterizedTypeName.get(FUTURE_CLASS, this.getReturnType()));
+        getParams().forEach((k, v) -> builder.addParameter(v, k));
+        return builder;
+    }
 
-        return asyncTask;
+    MethodSpec.Builder generateAsyncRepositoryMethod(EntityClass entityClass) {
+        MethodSpec.Builder builder = generateAsyncMethod();
+        if (getPreCode() != null) builder.addCode(this.getPreCode());
+        if (isCoalesced(entityClass))
+            builder.addStatement("return $L", coalescedCall(entityClass));
+        else builder.addStatement("return $T.submit($L, () -> $L)",
+                FUTURE_CLASS,
+                entityClass.writeExecutor(),
+                write(entityClass));
+        return builder;
+    }
 
+    MethodSpec.Builder generateAsyncViewModelMethod(EntityClass entityClass) {
+        return generateAsyncMethod()
+                .addStatement("return $N.$N($N)",
+                        entityClass.getRepositoryClassName().toLowerCase(),
+                        this.getMethodName() + ASYNC_SUFFIX,
+                        paramName());
     }
 
     @Override
@@ -101,10 +154,10 @@ public class AsyncMethod extends LivingroomMethod {
                 this.isReturnVoid()?"":"return",
                 entityClass.getRepositoryClassName().toLowerCase(),
                 this.getMethodName(),
-                this.hasParams() ? ITEM_PARAM : "");
+                paramName());
 
         builder.addCode(innerCode.build());
         return builder;
     }
 
-}
\ No newline at end of file
+}
@@ -1,25 +1,55 @@
 package com.pentabin.livingroom.compiler;
 
+import androidx.room.ColumnInfo;
 import androidx.room.Dao;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+import androidx.room.Query;
 
+import com.squareup.javapoet.AnnotationSpec;
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
+import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
 
+import static com.pentabin.livingroom.compiler.LivingRoomProcessor.READ_EXECUTOR;
+import static com.pentabin.livingroom.compiler.LivingRoomProcessor.WRITE_EXECUTOR;
 import static com.pentabin.livingroom.compiler.LivingRoomProcessor.dbClassName;
 
 class EntityClass {
     private static final String SUFFIX_DAO = "Dao";
     private static final String SUFFIX_REPO = "Repository";
     private static final String SUFFIX_VM = "ViewModel";
+    private static final String SUFFIX_DIFF_CALLBACK = "DiffCallback";
+    private static final String SUFFIX_LIST_ADAPTER = "ListAdapter";
+    private static final String RECYCLER_VIEW_PACKAGE = "androidx.recyclerview.widget";
 
     private String packageName;
     private final String name;
@@ -29,6 +59,45 @@ class EntityClass {
     private final String repositoryClassName;
     private final String viewModelClassName;
     private final Set<LivingroomMethod> methodsSet;
+    private final boolean millisTimestamps;
+    private boolean coalesceWrites;
+    private int coalesceMaxBatchSize;
+    private long coalesceWindowMillis;
+    private int cacheMaxEntries;
+    private List<String> memoryKeys;
+    private List<String> diffFields;
+    private final Set<List<String>> indexes = new LinkedHashSet<>();
+    private final Map<String, List<String>> projections = new LinkedHashMap<>();
+    private boolean indexesAdvised;
+    private String defaultOrder = "";
+    private boolean distinctAll;
+    private boolean incrementalAll;
+    private long refreshIntervalAll;
+    private boolean trackingRows;
+    private String upsertKey;
+    private List<String> editableColumns;
+    private List<String> searchFields;
+    private boolean searchSnippets;
+    private int streamChunkSize;
+    private int exportBatchSize;
+    private int pageSize = 20;
+    private int prefetchDistance = 0;
+
+    static final String COALESCER_FIELD = "writeCoalescer";
+    private static final ClassName COALESCER_CLASS = ClassName.get("com.pentabin.livingroom", "WriteCoalescer");
+    static final String CACHE_FIELD = "entityCache";
+    private static final ClassName CACHE_CLASS = ClassName.get("com.pentabin.livingroom", "EntityCache");
+    static final String MEMORY_TABLE_FIELD = "memoryTable";
+    private static final ClassName MEMORY_TABLE_CLASS = ClassName.get("com.pentabin.livingroom", "MemoryTable");
+    private static final String LOAD_MEMORY_TABLE = "loadMemoryTable";
+    static final String ROW_TRACKER_FIELD = "rowTracker";
+    private static final ClassName ROW_TRACKER_CLASS = ClassName.get("com.pentabin.livingroom", "RowTracker");
+    private static final String LOAD_ROWS = "loadRows";
+    static final String LOAD_ALL_ROWS = "loadAllRows";
+    static final String LOAD_ROWS_CHANGED_SINCE = "loadRowsChangedSince";
+    static final String LOAD_ROW_STAMPS = "loadRowStamps";
+    static final ClassName STAMP_CLASS = ClassName.get("com.pentabin.livingroom", "IncrementalListLiveData", "Stamp");
+    static final String MILLIS_ENTITY = "BasicMillisEntity";
 
     public EntityClass(TypeElement entityClass) {
         this.typeElement = entityClass;
@@ -42,6 +111,9 @@ class EntityClass {
             this.packageName = entityClass.getQualifiedName().toString().substring(0, lastDot);
         }
         methodsSet = new HashSet<>();
+        TypeMirror superclass = entityClass.getSuperclass();
+        this.millisTimestamps = superclass instanceof DeclaredType
+                && ((DeclaredType) superclass).asElement().getSimpleName().contentEquals(MILLIS_ENTITY);
     }
 
     private String getPackageName() {
@@ -64,6 +136,10 @@ class EntityClass {
         return daoClassName;
     }
 
+    ClassName getDatabaseClassName() {
+        return ClassName.get(this.getPackageName(), dbClassName);
+    }
+
     String getRepositoryClassName() {
         return repositoryClassName;
     }
@@ -76,6 +152,410 @@ class EntityClass {
         return methodsSet; // TODO use immutableSet
     }
 
+    // Entities extending BasicMillisEntity store created_at and updated_at as primitive epoch millis
+    boolean hasMillisTimestamps() {
+        return millisTimestamps;
+    }
+
+    TypeName getTimestampType() {
+        return millisTimestamps ? TypeName.LONG : ClassName.get(Date.class);
+    }
+
+    // The current timestamp, read from the clock without allocation for the millis entities
+    CodeBlock now() {
+        return millisTimestamps
+                ? CodeBlock.of("$T.currentTimeMillis()", System.class)
+                : CodeBlock.of("new $T()", Date.class);
+    }
+
+    // updated_at, or created_at if never updated: null in BasicEntity, 0 in BasicMillisEntity, as getLastModifiedMillis()
+    String lastModifiedExpression() {
+        return millisTimestamps ? "CASE WHEN updated_at != 0 THEN updated_at ELSE created_at END" : "COALESCE(updated_at, created_at)";
+    }
+
+    // The executor of the writes of the repository: the coalescer commits its pending batch before the other writes
+    CodeBlock writeExecutor() {
+        return this.isCoalescingWrites()
+                ? CodeBlock.of("$N", COALESCER_FIELD)
+                : CodeBlock.of("$T.$N", this.getDatabaseClassName(), WRITE_EXECUTOR);
+    }
+
+    boolean isCoalescingWrites() {
+        return coalesceWrites;
+    }
+
+    void setCoalesceWrites(int maxBatchSize, long windowMillis) {
+        this.coalesceWrites = true;
+        this.coalesceMaxBatchSize = maxBatchSize;
+        this.coalesceWindowMillis = windowMillis;
+    }
+
+    boolean isCached() {
+        return cacheMaxEntries > 0;
+    }
+
+    void setCached(int maxEntries) {
+        this.cacheMaxEntries = maxEntries;
+    }
+
+    boolean isInMemory() {
+        return memoryKeys != null;
+    }
+
+    List<String> getMemoryKeys() {
+        return memoryKeys;
+    }
+
+    void setInMemory(List<String> keys) {
+        this.memoryKeys = keys;
+    }
+
+    boolean isDiffable() {
+        return diffFields != null;
+    }
+
+    void setDiffable(List<String> fields) {
+        this.diffFields = fields;
+    }
+
+    boolean isEditable() {
+        return editableColumns != null;
+    }
+
+    List<String> getEditableColumns() {
+        return editableColumns;
+    }
+
+    void setEditable(List<String> columns) {
+        this.editableColumns = columns;
+    }
+
+    boolean isSearchable() {
+        return searchFields != null;
+    }
+
+    List<String> getSearchFields() {
+        return searchFields;
+    }
+
+    boolean hasSearchSnippets() {
+        return searchSnippets;
+    }
+
+    void setSearchable(List<String> fields, boolean snippets) {
+        this.searchFields = fields;
+        this.searchSnippets = snippets;
+    }
+
+    boolean isStreamable() {
+        return streamChunkSize > 0;
+    }
+
+    int getStreamChunkSize() {
+        return streamChunkSize;
+    }
+
+    void setStreamable(int chunkSize) {
+        this.streamChunkSize = chunkSize;
+    }
+
+    boolean isExportable() {
+        return exportBatchSize > 0;
+    }
+
+    int getExportBatchSize() {
+        return exportBatchSize;
+    }
+
+    void setExportable(int batchSize) {
+        this.exportBatchSize = batchSize;
+    }
+
+    boolean isUpsertable() {
+        return upsertKey != null;
+    }
+
+    String getUpsertKey() {
+        return upsertKey;
+    }
+
+    void setUpsertKey(String key) {
+        this.upsertKey = key;
+    }
+
+    boolean isTrackingRows() {
+        return trackingRows;
+    }
+
+    void setTrackingRows(boolean trackingRows) {
+        this.trackingRows = trackingRows;
+    }
+
+    // Example: entityCache.write(() -> rowTracker.write(() -> upsertRow(item))), the writes are marked as local before they commit
+    CodeBlock inTransaction(CodeBlock lambda) {
+        List<String> listeners = this.getWriteListenerFields();
+        if (listeners.isEmpty())
+            return CodeBlock.of("$N.runInTransaction($L)", this.getDatabaseClassName().simpleName().toLowerCase(), lambda);
+        CodeBlock write = lambda;
+        for (int i = listeners.size() - 1; i >= 0; i--) {
+            write = CodeBlock.of(i == listeners.size() - 1 ? "$N.write($L)" : "$N.write(() -> $L)", listeners.get(i), write);
+        }
+        return write;
+    }
+
+    // Example: rowTracker.write(() -> notedao.insert(item)), or the write alone if no listener needs it
+    CodeBlock trackedWrite(CodeBlock write) {
+        return this.getWriteListenerFields().isEmpty() ? write : this.inTransaction(CodeBlock.of("() -> $L", write));
+    }
+
+    // The fields told about the writes of the repository: the memory table, or the entity cache and the row tracker.
+    // Each one marks the writes as local before they commit, see LocalWrites
+    List<String> getWriteListenerFields() {
+        List<String> listeners = new ArrayList<>();
+        if (this.isInMemory()) return Collections.singletonList(MEMORY_TABLE_FIELD);
+        if (this.isCached()) listeners.add(CACHE_FIELD);
+        if (this.isTrackingRows()) listeners.add(ROW_TRACKER_FIELD);
+        return listeners;
+    }
+
+    /**
+     * @return the name of the method reading the column, as Room finds it: getX(), isX() or x(). Null if none
+     */
+    String getterOf(String column) {
+        String field = getColumns().get(column).getSimpleName().toString();
+        String capitalized = Character.toUpperCase(field.charAt(0)) + field.substring(1);
+        List<String> names = Arrays.asList("get" + capitalized, "is" + capitalized, field);
+        TypeElement element = this.getTypeElement();
+        while (element != null && !element.getQualifiedName().contentEquals(Object.class.getName())) {
+            for (ExecutableElement method: ElementFilter.methodsIn(element.getEnclosedElements())) {
+                if (method.getParameters().isEmpty() && !method.getModifiers().contains(Modifier.PRIVATE)
+                        && names.contains(method.getSimpleName().toString())) return method.getSimpleName().toString();
+            }
+            TypeMirror superclass = element.getSuperclass();
+            element = superclass instanceof DeclaredType ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+        return null;
+    }
+
+    /**
+     * @return the name of the method setting the column: setX(value), or setY for a boolean field named isY. Null if none
+     */
+    String setterOf(String column) {
+        VariableElement field = getColumns().get(column);
+        String name = field.getSimpleName().toString();
+        List<String> names = new ArrayList<>();
+        names.add("set" + Character.toUpperCase(name.charAt(0)) + name.substring(1));
+        if (name.length() > 2 && name.startsWith("is") && Character.isUpperCase(name.charAt(2)))
+            names.add("set" + name.substring(2));
+        TypeElement element = this.getTypeElement();
+        while (element != null && !element.getQualifiedName().contentEquals(Object.class.getName())) {
+            for (ExecutableElement method: ElementFilter.methodsIn(element.getEnclosedElements())) {
+                if (method.getParameters().size() == 1 && !method.getModifiers().contains(Modifier.PRIVATE)
+                        && names.contains(method.getSimpleName().toString())) return method.getSimpleName().toString();
+            }
+            TypeMirror superclass = element.getSuperclass();
+            element = superclass instanceof DeclaredType ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+        return null;
+    }
+
+    // Indexes created by the generated database when it is opened
+    void addIndex(String... columns) {
+        indexes.add(Arrays.asList(columns));
+    }
+
+    // Not prefixed by index_ to never clash with the indices Room creates from @Entity
+    private String indexName(List<String> columns) {
+        return "livingroom_index_" + this.getName() + "_" + String.join("_", columns);
+    }
+
+    List<String> getCreateIndexStatements() {
+        List<String> statements = new ArrayList<>();
+        for (List<String> columns: indexes) {
+            statements.add("CREATE INDEX IF NOT EXISTS " + indexName(columns)
+                    + " ON " + this.getName() + "(" + String.join(", ", columns) + ")");
+        }
+        return statements;
+    }
+
+    List<String> getDropIndexStatements() {
+        List<String> statements = new ArrayList<>();
+        for (List<String> columns: indexes) {
+            statements.add("DROP INDEX IF EXISTS " + indexName(columns));
+        }
+        return statements;
+    }
+
+    // Column name -> field, including the fields inherited from BasicEntity
+    Map<String, VariableElement> getColumns() {
+        Map<String, VariableElement> columns = new LinkedHashMap<>();
+        TypeElement element = this.getTypeElement();
+        while (element != null && !element.getQualifiedName().contentEquals(Object.class.getName())) {
+            for (VariableElement field: ElementFilter.fieldsIn(element.getEnclosedElements())) {
+                if (field.getModifiers().contains(Modifier.STATIC)
+                        || field.getModifiers().contains(Modifier.TRANSIENT)
+                        || field.getAnnotation(Ignore.class) != null) continue;
+                ColumnInfo columnInfo = field.getAnnotation(ColumnInfo.class);
+                String name = columnInfo != null && !columnInfo.name().equals(ColumnInfo.INHERIT_FIELD_NAME)
+                        ? columnInfo.name()
+                        : field.getSimpleName().toString();
+                columns.put(name, field);
+            }
+            TypeMirror superclass = element.getSuperclass();
+            element = superclass instanceof DeclaredType ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+        return columns;
+    }
+
+    // Indices declared on @Entity and @ColumnInfo, and the ones created by the generated database
+    private List<List<String>> getKnownIndexes() {
+        List<List<String>> known = new ArrayList<>(indexes);
+        Entity entity = this.getTypeElement().getAnnotation(Entity.class);
+        if (entity != null) {
+            for (Index index: entity.indices()) {
+                known.add(Arrays.asList(index.value()));
+            }
+        }
+        for (Map.Entry<String, VariableElement> column: getColumns().entrySet()) {
+            ColumnInfo columnInfo = column.getValue().getAnnotation(ColumnInfo.class);
+            if (columnInfo != null && columnInfo.index()) known.add(Collections.singletonList(column.getKey()));
+        }
+        return known;
+    }
+
+    // The primary key, or a column with a unique index of its own
+    boolean isUnique(String column) {
+        if (column.equals("id")) return true;
+        VariableElement field = getColumns().get(column);
+        if (field != null && field.getAnnotation(PrimaryKey.class) != null) return true;
+        Entity entity = this.getTypeElement().getAnnotation(Entity.class);
+        if (entity != null) {
+            for (Index index: entity.indices()) {
+                if (index.unique() && Arrays.asList(index.value()).equals(Collections.singletonList(column))) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return method name -> suggested index columns, for the selects and bulk mutations that no index can serve
+     */
+    Map<String, List<String>> getMissingIndexes() {
+        Map<String, List<String>> missing = new LinkedHashMap<>();
+        // A boolean column such as isDeleted splits the rows in two: an index on it alone would not help
+        Set<String> columns = new HashSet<>();
+        for (Map.Entry<String, VariableElement> column: getColumns().entrySet()) {
+            TypeMirror type = column.getValue().asType();
+            if (type.getKind() != TypeKind.BOOLEAN && !type.toString().equals(Boolean.class.getName()))
+                columns.add(column.getKey());
+        }
+        for (LivingroomMethod m: this.getMethodsSet()) {
+            if (m instanceof SelectMethod && ((SelectMethod) m).isServedFromMemory(this)) continue;
+            String where = m instanceof SelectMethod ? ((SelectMethod) m).getWhere()
+                    : m instanceof MutateMethod ? ((MutateMethod) m).getWhere() : null;
+            if (where == null) continue;
+            WhereClauseAnalyzer analyzer = new WhereClauseAnalyzer(where, columns);
+            if (analyzer.isEmpty() || analyzer.isServedByPrimaryKey()) continue;
+            boolean covered = false;
+            for (List<String> index: getKnownIndexes()) {
+                covered |= analyzer.isCoveredBy(index);
+            }
+            if (!covered) missing.put(m.getMethodName(), analyzer.getColumns());
+        }
+        return missing;
+    }
+
+    ClassName getProjectionClassName(String simpleName) {
+        return getGeneratedClassName(simpleName);
+    }
+
+    ClassName getGeneratedClassName(String simpleName) {
+        return ClassName.get(this.getPackageName(), simpleName);
+    }
+
+    /**
+     * @return false if a projection with the same name but other columns is already declared
+     */
+    boolean addProjection(String simpleName, List<String> columns) {
+        List<String> declared = projections.get(simpleName);
+        if (declared != null) return declared.equals(columns);
+        projections.put(simpleName, columns);
+        return true;
+    }
+
+    // The advice is given once, the classes are generated again in each processing round
+    boolean markIndexesAdvised() {
+        boolean advised = indexesAdvised;
+        indexesAdvised = true;
+        return !advised;
+    }
+
+    String getDefaultOrder() {
+        return defaultOrder;
+    }
+
+    void setDefaultOrder(String orderBy) {
+        this.defaultOrder = orderBy;
+    }
+
+    boolean isDistinctAll() {
+        return distinctAll;
+    }
+
+    void setDistinctAll(boolean distinct) {
+        this.distinctAll = distinct;
+    }
+
+    long getRefreshIntervalAll() {
+        return refreshIntervalAll;
+    }
+
+    void setRefreshIntervalAll(long refreshIntervalMillis) {
+        this.refreshIntervalAll = refreshIntervalMillis;
+    }
+
+    boolean isIncrementalAll() {
+        return incrementalAll;
+    }
+
+    void setIncrementalAll(boolean incremental) {
+        this.incrementalAll = incremental;
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    int getPrefetchDistance() {
+        return prefetchDistance > 0 ? prefetchDistance : pageSize;
+    }
+
+    void setPageConfig(int pageSize, int prefetchDistance) {
+        this.pageSize = pageSize;
+        this.prefetchDistance = prefetchDistance;
+    }
+
+    private boolean hasCachedSelects() {
+        for (LivingroomMethod m: this.getMethodsSet()) {
+            if (m instanceof SelectMethod && ((SelectMethod) m).isCached()) return true;
+        }
+        return false;
+    }
+
+    private boolean hasPagedMethods() {
+        for (LivingroomMethod m: this.getMethodsSet()) {
+            if (m instanceof SelectMethod && ((SelectMethod) m).isPaged()) return true;
+        }
+        return false;
+    }
+
+    boolean hasMethod(String methodName) {
+        for (LivingroomMethod m: this.getMethodsSet()) {
+            if (m.getMethodName().equals(methodName)) return true;
+        }
+        return false;
+    }
+
     void addMethod(LivingroomMethod method) {
         methodsSet.add(method);
     }
@@ -101,34 +581,292 @@ class EntityClass {
                 .addAnnotation(Dao.class);
 
         for (LivingroomMethod m: this.getMethodsSet()) {
-            daoClass.addMethod(m.generateDaoMethod().build());
+            MethodSpec.Builder daoMethod = m.generateDaoMethod();
+            if (daoMethod != null) daoClass.addMethod(daoMethod.build());
+        }
+        if (this.isUpsertable()) {
+            daoClass.addMethods(UpsertMethod.generateDaoMethods(this));
+        }
+        if (this.isEditable()) {
+            daoClass.addMethods(EntityEditor.generateDaoMethods(this));
+        }
+        if (this.isStreamable() || this.isExportable()) {
+            daoClass.addMethods(RowStream.generateDaoMethods(this));
+        }
+        if (this.isExportable()) {
+            daoClass.addMethods(EntityExporter.generateDaoMethods(this));
+        }
+        if (this.isInMemory()) {
+            daoClass.addMethod(MethodSpec.methodBuilder(LOAD_MEMORY_TABLE)
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .addAnnotation(AnnotationSpec.builder(Query.class)
+                            .addMember("value", "$S", "SELECT * FROM " + this.getName() + " ORDER BY id")
+                            .build())
+                    .returns(ParameterizedTypeName.get(ClassName.get(List.class), this.getTypeName()))
+                    .build());
+        }
+        if (this.isTrackingRows()) { // Read by the RowTracker of getById()
+            daoClass.addMethod(MethodSpec.methodBuilder(LOAD_ROWS)
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .addAnnotation(AnnotationSpec.builder(Query.class)
+                            .addMember("value", "$S", "SELECT * FROM " + this.getName() + " WHERE id IN (:ids)")
+                            .build())
+                    .addParameter(ParameterizedTypeName.get(List.class, Long.class), "ids")
+                    .returns(ParameterizedTypeName.get(ClassName.get(List.class), this.getTypeName()))
+                    .build());
+        }
+        if (this.isIncrementalAll()) { // Read by the IncrementalListLiveData of getAll()
+            String order = defaultOrder.isEmpty() ? "" : " ORDER BY " + defaultOrder;
+            TypeName rows = ParameterizedTypeName.get(ClassName.get(List.class), this.getTypeName());
+            daoClass.addMethod(MethodSpec.methodBuilder(LOAD_ALL_ROWS)
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .addAnnotation(AnnotationSpec.builder(Query.class)
+                            .addMember("value", "$S", "SELECT * FROM " + this.getName() + " WHERE isDeleted = 0" + order)
+                            .build())
+                    .returns(rows)
+                    .build());
+            daoClass.addMethod(MethodSpec.methodBuilder(LOAD_ROWS_CHANGED_SINCE)
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .addAnnotation(AnnotationSpec.builder(Query.class)
+                            .addMember("value", "$S", "SELECT * FROM " + this.getName()
+                                    + " WHERE isDeleted = 0 AND " + this.lastModifiedExpression() + " >= :since")
+                            .build())
+                    .addParameter(TypeName.LONG, "since")
+                    .returns(rows)
+                    .build());
+            daoClass.addMethod(MethodSpec.methodBuilder(LOAD_ROW_STAMPS)
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .addAnnotation(AnnotationSpec.builder(Query.class)
+                            .addMember("value", "$S", "SELECT id, " + this.lastModifiedExpression() + " AS modified FROM "
+                                    + this.getName() + " WHERE isDeleted = 0" + order)
+                            .build())
+                    .returns(ParameterizedTypeName.get(ClassName.get(List.class), STAMP_CLASS))
+                    .build());
         }
         return daoClass.build();
     }
 
+    // Immutable row holding the projected columns, Room fills it through the constructor
+    private TypeSpec generateProjectionClass(String simpleName, List<String> columns) {
+        Map<String, VariableElement> fields = getColumns();
+        ClassName projection = this.getProjectionClassName(simpleName);
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC);
+        MethodSpec.Builder equals = MethodSpec.methodBuilder("equals")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(Object.class, "o")
+                .returns(TypeName.BOOLEAN)
+                .addStatement("if (this == o) return true")
+                .addStatement("if (!(o instanceof $T)) return false", projection)
+                .addStatement("$T other = ($T) o", projection, projection);
+        CodeBlock.Builder sameFields = CodeBlock.builder().add("return ");
+        List<String> fieldNames = new ArrayList<>();
+
+        TypeSpec.Builder projectionClass = TypeSpec.classBuilder(simpleName)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+        for (String column: columns) {
+            VariableElement field = fields.get(column);
+            String fieldName = field.getSimpleName().toString();
+            TypeName type = TypeName.get(field.asType());
+            FieldSpec.Builder fieldSpec = FieldSpec.builder(type, fieldName, Modifier.PRIVATE, Modifier.FINAL);
+            if (!fieldName.equals(column)) {
+                fieldSpec.addAnnotation(AnnotationSpec.builder(ColumnInfo.class)
+                        .addMember("name", "$S", column)
+                        .build());
+            }
+            projectionClass.addField(fieldSpec.build());
+            constructor.addParameter(type, fieldName)
+                    .addStatement("this.$N = $N", fieldName, fieldName);
+            projectionClass.addMethod(MethodSpec.methodBuilder("get" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1))
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(type)
+                    .addStatement("return $N", fieldName)
+                    .build());
+            if (!fieldNames.isEmpty()) sameFields.add("\n&& ");
+            sameFields.add(type.isPrimitive() ? "$N == other.$N" : "$T.equals($N, other.$N)",
+                    type.isPrimitive() ? new Object[]{fieldName, fieldName} : new Object[]{Objects.class, fieldName, fieldName});
+            fieldNames.add(fieldName);
+        }
+        return projectionClass
+                .addMethod(constructor.build())
+                .addMethod(equals.addStatement("$L", sameFields.build()).build())
+                .addMethod(MethodSpec.methodBuilder("hashCode")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(TypeName.INT)
+                        .addStatement("return $T.hash($L)", Objects.class, String.join(", ", fieldNames))
+                        .build())
+                .build();
+    }
+
+    List<TypeSpec> generateProjectionClasses() {
+        List<TypeSpec> classes = new ArrayList<>();
+        for (Map.Entry<String, List<String>> projection: projections.entrySet()) {
+            classes.add(generateProjectionClass(projection.getKey(), projection.getValue()));
+        }
+        return classes;
+    }
+
+    // Items are the same if they have the same id, their contents if updated_at and the diff fields are equal
+    TypeSpec generateDiffCallbackClass() {
+        List<String> compared = new ArrayList<>();
+        compared.add("updated_at");
+        compared.addAll(diffFields);
+        CodeBlock.Builder sameContents = CodeBlock.builder().add("return ");
+        for (int i = 0; i < compared.size(); i++) {
+            String getter = getterOf(compared.get(i));
+            if (i > 0) sameContents.add("\n&& ");
+            if (TypeName.get(getColumns().get(compared.get(i)).asType()).isPrimitive())
+                sameContents.add("oldItem.$N() == newItem.$N()", getter, getter);
+            else
+                sameContents.add("$T.equals(oldItem.$N(), newItem.$N())", Objects.class, getter, getter);
+        }
+        return TypeSpec.classBuilder(this.getName() + SUFFIX_DIFF_CALLBACK)
+                .addModifiers(Modifier.PUBLIC)
+                .superclass(ParameterizedTypeName.get(ClassName.get(RECYCLER_VIEW_PACKAGE, "DiffUtil", "ItemCallback"), this.getTypeName()))
+                .addMethod(MethodSpec.methodBuilder("areItemsTheSame")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(this.getTypeName(), "oldItem")
+                        .addParameter(this.getTypeName(), "newItem")
+                        .returns(TypeName.BOOLEAN)
+                        .addStatement("return oldItem.getId() == newItem.getId()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("areContentsTheSame")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(this.getTypeName(), "oldItem")
+                        .addParameter(this.getTypeName(), "newItem")
+                        .returns(TypeName.BOOLEAN)
+                        .addStatement("$L", sameContents.build())
+                        .build())
+                .build();
+    }
+
+    // Abstract ListAdapter with stable ids, the lists are diffed on the read executor
+    TypeSpec generateListAdapterClass() {
+        ClassName viewHolder = ClassName.get(RECYCLER_VIEW_PACKAGE, "RecyclerView", "ViewHolder");
+        TypeVariableName vh = TypeVariableName.get("VH", viewHolder);
+        ClassName configBuilder = ClassName.get(RECYCLER_VIEW_PACKAGE, "AsyncDifferConfig", "Builder");
+        return TypeSpec.classBuilder(this.getName() + SUFFIX_LIST_ADAPTER)
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .addTypeVariable(vh)
+                .superclass(ParameterizedTypeName.get(ClassName.get(RECYCLER_VIEW_PACKAGE, "ListAdapter"), this.getTypeName(), vh))
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PROTECTED)
+                        .addStatement("super(new $T(new $T()).setBackgroundThreadExecutor($T.$N).build())",
+                                ParameterizedTypeName.get(configBuilder, this.getTypeName()),
+                                ClassName.get(this.getPackageName(), this.getName() + SUFFIX_DIFF_CALLBACK),
+                                this.getDatabaseClassName(),
+                                READ_EXECUTOR)
+                        .addStatement("setHasStableIds(true)")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("getItemId")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(TypeName.INT, "position")
+                        .returns(TypeName.LONG)
+                        .addStatement("return getItem(position).getId()")
+                        .build())
+                .build();
+    }
+
     TypeSpec generateRepositoryClass() {
         final String dbField = dbClassName.toLowerCase();
 
-        MethodSpec constructor = MethodSpec.constructorBuilder()
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
                 .addModifiers(Modifier.PUBLIC)
                 .addParameter(ClassName.get("android.app", "Application"), "app")
-                .addStatement("$N = $T.getDatabase(app)", dbField, ClassName.get(this.getPackageName(), dbClassName))
-                .addStatement("$N = $N.$N()", this.getDaoClassName().toLowerCase(), dbField, this.getDaoClassName().toLowerCase())
-                .build();
+                .addStatement("$N = $T.getDatabase(app)", dbField, this.getDatabaseClassName())
+                .addStatement("$N = $N.$N()", this.getDaoClassName().toLowerCase(), dbField, this.getDaoClassName().toLowerCase());
 
         TypeSpec.Builder repositoryClass = TypeSpec.classBuilder(this.getRepositoryClassName())
                 .addModifiers(Modifier.PUBLIC)
-                .addField(ClassName.get(this.getPackageName(), dbClassName), dbField, Modifier.PRIVATE) // TODO package for db!
-                .addField(ClassName.get(this.getPackageName(), this.getDaoClassName()), this.getDaoClassName().toLowerCase(), Modifier.PRIVATE)
-                .addMethod(constructor);
+                .addField(this.getDatabaseClassName(), dbField, Modifier.PRIVATE) // TODO package for db!
+                .addField(ClassName.get(this.getPackageName(), this.getDaoClassName()), this.getDaoClassName().toLowerCase(), Modifier.PRIVATE);
+
+        if (this.isCoalescingWrites()) {
+            // Shared by all the repository instances so that writes from every screen are coalesced together
+            repositoryClass.addField(COALESCER_CLASS, COALESCER_FIELD, Modifier.PRIVATE, Modifier.STATIC);
+            constructor.beginControlFlow("synchronized ($N.class)", this.getRepositoryClassName())
+                    .beginControlFlow("if ($N == null)", COALESCER_FIELD)
+                    .addStatement("$N = new $T($N, $T.$N, $L, $LL)", COALESCER_FIELD, COALESCER_CLASS,
+                            dbField, this.getDatabaseClassName(), WRITE_EXECUTOR,
+                            coalesceMaxBatchSize, coalesceWindowMillis)
+                    .endControlFlow()
+                    .endControlFlow();
+        }
+        if (this.isCached()) {
+            // Shared by all the repository instances, like the Room table it mirrors
+            ParameterizedTypeName cacheType = ParameterizedTypeName.get(CACHE_CLASS, this.getTypeName());
+            repositoryClass.addField(cacheType, CACHE_FIELD, Modifier.PRIVATE, Modifier.STATIC);
+            constructor.beginControlFlow("synchronized ($N.class)", this.getRepositoryClassName())
+                    .beginControlFlow("if ($N == null)", CACHE_FIELD)
+                    .addStatement("$N = new $T<>($N, $S, $T.$N, $L)", CACHE_FIELD, CACHE_CLASS,
+                            dbField, this.getName(), this.getDatabaseClassName(), READ_EXECUTOR,
+                            cacheMaxEntries)
+                    .endControlFlow()
+                    .endControlFlow();
+        }
+        if (this.isTrackingRows()) {
+            // Shared by all the repository instances, so that the writes of each one reach the rows observed through the others
+            ParameterizedTypeName trackerType = ParameterizedTypeName.get(ROW_TRACKER_CLASS, this.getTypeName());
+            repositoryClass.addField(trackerType, ROW_TRACKER_FIELD, Modifier.PRIVATE, Modifier.STATIC);
+            constructor.beginControlFlow("synchronized ($N.class)", this.getRepositoryClassName())
+                    .beginControlFlow("if ($N == null)", ROW_TRACKER_FIELD)
+                    .addStatement("$N = new $T<>($N, $S, $T.$N, $N::$N)", ROW_TRACKER_FIELD, ROW_TRACKER_CLASS,
+                            dbField, this.getName(), this.getDatabaseClassName(), READ_EXECUTOR,
+                            this.getDaoClassName().toLowerCase(), LOAD_ROWS)
+                    .endControlFlow()
+                    .endControlFlow();
+        }
+        if (this.isInMemory()) {
+            // Loaded once for the whole application, then kept up to date by the writes and the invalidations
+            ParameterizedTypeName memoryTableType = ParameterizedTypeName.get(MEMORY_TABLE_CLASS, this.getTypeName());
+            repositoryClass.addField(memoryTableType, MEMORY_TABLE_FIELD, Modifier.PRIVATE, Modifier.STATIC);
+            CodeBlock.Builder memoryTable = CodeBlock.builder()
+                    .add("$N = new $T($N, $S, $T.$N, () -> $N.$N())", MEMORY_TABLE_FIELD, memoryTableType,
+                            dbField, this.getName(), this.getDatabaseClassName(), READ_EXECUTOR,
+                            this.getDaoClassName().toLowerCase(), LOAD_MEMORY_TABLE)
+                    .indent().indent();
+            for (String key: memoryKeys) {
+                memoryTable.add("\n.index($S, item -> item.$N())", key, getterOf(key));
+            }
+            memoryTable.add("\n.load()").unindent().unindent();
+            constructor.beginControlFlow("synchronized ($N.class)", this.getRepositoryClassName())
+                    .beginControlFlow("if ($N == null)", MEMORY_TABLE_FIELD)
+                    .addStatement("$L", memoryTable.build())
+                    .endControlFlow()
+                    .endControlFlow();
+        }
+        repositoryClass.addMethod(constructor.build());
+        if (this.isUpsertable()) {
+            repositoryClass.addMethods(UpsertMethod.generateRepositoryMethods(this));
+        }
+        if (this.isEditable()) {
+            repositoryClass.addMethods(EntityEditor.generateRepositoryMethods(this));
+        }
+        if (this.isStreamable()) {
+            repositoryClass.addMethods(RowStream.generateRepositoryMethods(this));
+        }
+        if (this.isExportable()) {
+            repositoryClass.addMethods(EntityExporter.generateRepositoryMethods(this));
+        }
+        if (this.hasPagedMethods()) {
+            repositoryClass.addField(SelectMethod.pagedListConfigField(this));
+        }
+        if (this.hasCachedSelects()) {
+            repositoryClass.addField(SelectMethod.liveDataCacheField(this));
+        }
 
         for (LivingroomMethod m: this.getMethodsSet()) {
-            if (!m.hasParams())
+            if (m instanceof SelectMethod && !m.hasParams() && ((SelectMethod)m).isLiveData())
                 repositoryClass.addField(((SelectMethod)m).getReturnType(), m.getMethodName()+"List", Modifier.PRIVATE);// TODO test if live or not????
             repositoryClass.addMethod(m.generateRepositoryMethod(this).build());
-            if (m instanceof AsyncMethod) {
-                repositoryClass.addType(
-                        ((AsyncMethod)m).generateAsyncTaskClass(this).build());
+            if (m instanceof AsyncMethod && !m.isReturnVoid()) {
+                repositoryClass.addMethod(
+                        ((AsyncMethod)m).generateAsyncRepositoryMethod(this).build());
             }
         }
         return repositoryClass.build();
@@ -148,10 +886,23 @@ class EntityClass {
                 .addField(ClassName.get(this.getPackageName(), this.getRepositoryClassName()), this.getRepositoryClassName().toLowerCase(), Modifier.PRIVATE)
                 .addMethod(constructor);
         for (LivingroomMethod m: this.getMethodsSet()) {
-            if (!m.hasParams()) {
+            if (m instanceof SelectMethod && !m.hasParams() && ((SelectMethod)m).isLiveData()) {
                 viewModelClass.addField(((SelectMethod)m).getReturnType(), m.getMethodName()+"List", Modifier.PRIVATE);
             }
             viewModelClass.addMethod(m.generateViewModelMethod(this).build());
+            if (m instanceof AsyncMethod && !m.isReturnVoid()) {
+                viewModelClass.addMethod(
+                        ((AsyncMethod)m).generateAsyncViewModelMethod(this).build());
+            }
+        }
+        if (this.isEditable()) {
+            viewModelClass.addMethods(EntityEditor.generateViewModelMethods(this));
+        }
+        if (this.isStreamable()) {
+            viewModelClass.addMethods(RowStream.generateViewModelMethods(this));
+        }
+        if (this.isExportable()) {
+            viewModelClass.addMethods(EntityExporter.generateViewModelMethods(this));
         }
         return viewModelClass.build();
     }
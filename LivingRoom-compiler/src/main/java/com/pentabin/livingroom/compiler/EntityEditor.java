@@ -0,0 +1,207 @@
+package com.pentabin.livingroom.compiler;
+
+import androidx.room.Query;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import javax.lang.model.element.Modifier;
+
+
+/**
+ * The generated Entity + Editor class, see @Editable, and the dao, repository and view model methods saving it.
+ * <p>
+ * The editor sets the fields of the item and records the columns whose value changed in a bit mask.
+ * save(editor) then only updates these columns, by a single statement keeping the other columns as they are
+ * in the database, and writes nothing when no column changed.
+ */
+class EntityEditor {
+    private static final String SUFFIX_EDITOR = "Editor";
+    static final int MAX_COLUMNS = 63;
+    private static final String EDIT = "edit";
+    private static final String SAVE = "save";
+    private static final String CHANGES = "changes";
+    private static final String TAKE_CHANGES = "takeChanges";
+    private static final String RESTORE_CHANGES = "restoreChanges";
+    private static final String UPDATE_CHANGES = "updateChanges";
+
+    private EntityEditor() {
+    }
+
+    static ClassName getClassName(EntityClass entityClass) {
+        return entityClass.getGeneratedClassName(entityClass.getName() + SUFFIX_EDITOR);
+    }
+
+    private static String fieldOf(EntityClass entityClass, String column) {
+        return entityClass.getColumns().get(column).getSimpleName().toString();
+    }
+
+    private static String capitalized(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    // Example: TITLE, the bit of the column title
+    private static String maskOf(EntityClass entityClass, String column) {
+        return fieldOf(entityClass, column).replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase();
+    }
+
+    static TypeSpec generateEditorClass(EntityClass entityClass) {
+        ClassName editor = getClassName(entityClass);
+        TypeSpec.Builder editorClass = TypeSpec.classBuilder(editor)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addField(entityClass.getTypeName(), "item", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(TypeName.LONG, CHANGES, Modifier.PRIVATE)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(entityClass.getTypeName(), "item")
+                        .addStatement("this.item = item")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("getItem")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(entityClass.getTypeName())
+                        .addStatement("return item")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("hasChanges")
+                        .addModifiers(Modifier.PUBLIC, Modifier.SYNCHRONIZED)
+                        .returns(TypeName.BOOLEAN)
+                        .addStatement("return $N != 0", CHANGES)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder(TAKE_CHANGES)
+                        .addJavadoc("@return the bits of the changed columns, cleared for the next save\n")
+                        .addModifiers(Modifier.SYNCHRONIZED)
+                        .returns(TypeName.LONG)
+                        .addStatement("long taken = $N", CHANGES)
+                        .addStatement("$N = 0", CHANGES)
+                        .addStatement("return taken")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder(RESTORE_CHANGES)
+                        .addJavadoc("Sets again the bits taken by a save that failed\n")
+                        .addModifiers(Modifier.SYNCHRONIZED)
+                        .addParameter(TypeName.LONG, "taken")
+                        .addStatement("$N |= taken", CHANGES)
+                        .build());
+        List<String> columns = entityClass.getEditableColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            String column = columns.get(i);
+            String field = fieldOf(entityClass, column);
+            TypeName type = TypeName.get(entityClass.getColumns().get(column).asType());
+            editorClass.addField(FieldSpec.builder(TypeName.LONG, maskOf(entityClass, column), Modifier.STATIC, Modifier.FINAL)
+                    .initializer("1L << $L", i)
+                    .build());
+            editorClass.addMethod(MethodSpec.methodBuilder("set" + capitalized(field))
+                    .addModifiers(Modifier.PUBLIC, Modifier.SYNCHRONIZED)
+                    .addParameter(type, field)
+                    .returns(editor)
+                    .beginControlFlow(type.isPrimitive() ? "if (item.$N() != $N)" : "if (!$T.equals(item.$N(), $N))",
+                            type.isPrimitive() ? new Object[]{entityClass.getterOf(column), field}
+                                    : new Object[]{Objects.class, entityClass.getterOf(column), field})
+                    .addStatement("item.$N($N)", entityClass.setterOf(column), field)
+                    .addStatement("$N |= $N", CHANGES, maskOf(entityClass, column))
+                    .endControlFlow()
+                    .addStatement("return this")
+                    .build());
+        }
+        return editorClass.build();
+    }
+
+    // Example: @Query("UPDATE Note SET title = CASE WHEN :changes & 1 THEN :title ELSE title END, ..., updated_at = :updated_at WHERE id = :id")
+    // void updateChanges(long id, long changes, String title, ..., Date updated_at)
+    static List<MethodSpec> generateDaoMethods(EntityClass entityClass) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder(UPDATE_CHANGES)
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .addParameter(TypeName.LONG, "id")
+                .addParameter(TypeName.LONG, CHANGES);
+        StringBuilder query = new StringBuilder("UPDATE " + entityClass.getName() + " SET ");
+        List<String> columns = entityClass.getEditableColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            String column = columns.get(i);
+            String field = fieldOf(entityClass, column);
+            query.append(column).append(" = CASE WHEN :").append(CHANGES).append(" & ").append(1L << i)
+                    .append(" THEN :").append(field).append(" ELSE ").append(column).append(" END, ");
+            method.addParameter(TypeName.get(entityClass.getColumns().get(column).asType()), field);
+        }
+        query.append("updated_at = :updated_at WHERE id = :id");
+        method.addAnnotation(AnnotationSpec.builder(Query.class)
+                        .addMember("value", "$S", query.toString())
+                        .build())
+                .addParameter(entityClass.getTimestampType(), "updated_at");
+        List<MethodSpec> methods = new ArrayList<>();
+        methods.add(method.build());
+        return methods;
+    }
+
+    private static MethodSpec.Builder editMethod(EntityClass entityClass) {
+        return MethodSpec.methodBuilder(EDIT)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(entityClass.getTypeName(), "item")
+                .returns(getClassName(entityClass))
+                .addStatement("return new $T(item)", getClassName(entityClass));
+    }
+
+    private static MethodSpec.Builder saveMethod(EntityClass entityClass) {
+        return MethodSpec.methodBuilder(SAVE)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(getClassName(entityClass), "editor")
+                .returns(ParameterizedTypeName.get(AsyncMethod.FUTURE_CLASS, TypeName.get(Boolean.class)));
+    }
+
+    // save(editor) returns true once the changed columns are written, false if none changed.
+    // The bits are taken when the save is submitted, so that the edits made meanwhile are saved next time,
+    // and set again if the write fails.
+    // Example: notedao.updateChanges(item.getId(), changes, (changes & NoteEditor.TITLE) != 0 ? item.getTitle() : null, ..., now),
+    // the unchanged objects are not bound, only the primitives need a value
+    static List<MethodSpec> generateRepositoryMethods(EntityClass entityClass) {
+        ClassName editor = getClassName(entityClass);
+        List<CodeBlock> values = new ArrayList<>();
+        for (String column: entityClass.getEditableColumns()) {
+            boolean primitive = entityClass.getColumns().get(column).asType().getKind().isPrimitive();
+            values.add(primitive ? CodeBlock.of("item.$N()", entityClass.getterOf(column))
+                    : CodeBlock.of("($N & $T.$N) != 0 ? item.$N() : null",
+                            CHANGES, editor, maskOf(entityClass, column), entityClass.getterOf(column)));
+        }
+        CodeBlock update = entityClass.trackedWrite(CodeBlock.of("$N.$N(item.getId(), $N, $L, now)",
+                entityClass.getDaoClassName().toLowerCase(), UPDATE_CHANGES, CHANGES, CodeBlock.join(values, ", ")));
+        CodeBlock.Builder write = CodeBlock.builder()
+                .addStatement("if (changes == 0) return false")
+                .addStatement("$T now = $L", entityClass.getTimestampType(), entityClass.now())
+                .beginControlFlow("try")
+                .addStatement("$L", update)
+                .nextControlFlow("catch ($T e)", RuntimeException.class)
+                .addStatement("editor.$N(changes)", RESTORE_CHANGES)
+                .addStatement("throw e")
+                .endControlFlow()
+                .addStatement("item.setUpdated_at(now)");
+        for (String listener: entityClass.getWriteListenerFields()) {
+            write.addStatement("$N.written(item)", listener);
+        }
+        write.addStatement("return true");
+
+        List<MethodSpec> methods = new ArrayList<>();
+        methods.add(editMethod(entityClass).build());
+        methods.add(saveMethod(entityClass)
+                .addStatement("$T item = editor.getItem()", entityClass.getTypeName())
+                .addStatement("long changes = editor.$N()", TAKE_CHANGES)
+                .addCode("return $T.submit($L, () -> {\n$>$L$<});\n", AsyncMethod.FUTURE_CLASS,
+                        entityClass.writeExecutor(), write.build())
+                .build());
+        return methods;
+    }
+
+    static List<MethodSpec> generateViewModelMethods(EntityClass entityClass) {
+        List<MethodSpec> methods = new ArrayList<>();
+        methods.add(editMethod(entityClass).build());
+        methods.add(saveMethod(entityClass)
+                .addStatement("return $N.$N(editor)", entityClass.getRepositoryClassName().toLowerCase(), SAVE)
+                .build());
+        return methods;
+    }
+}
@@ -0,0 +1,300 @@
+package com.pentabin.livingroom.compiler;
+
+import androidx.room.Ignore;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Update;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
+
+import static com.pentabin.livingroom.compiler.LivingRoomProcessor.READ_EXECUTOR;
+
+/**
+ * The generated Entity + JsonAdapter class, see @Exportable, and the dao, repository and view model methods
+ * exporting and importing the rows of the table as JSON Lines.
+ * <p>
+ * The adapter writes and reads each column under its name, from the fields of the entity: the timestamps as epoch millis,
+ * the null values as null. The import keeps the ids of the rows: the rows of the stream replace the existing rows
+ * with the same id, by batches inserted in a transaction each.
+ */
+class EntityExporter {
+    private static final ClassName JSON_LINES_CLASS = ClassName.get("com.pentabin.livingroom", "JsonLines");
+    private static final ClassName JSON_WRITER_CLASS = ClassName.get("android.util", "JsonWriter");
+    private static final ClassName JSON_READER_CLASS = ClassName.get("android.util", "JsonReader");
+    private static final ClassName JSON_TOKEN_CLASS = ClassName.get("android.util", "JsonToken");
+    private static final String SUFFIX_ADAPTER = "JsonAdapter";
+    private static final String EXPORT = "exportTo";
+    private static final String IMPORT = "importFrom";
+    private static final String IMPORT_INSERT = "importInsert";
+    private static final String IMPORT_UPDATE = "importUpdate";
+    private static final String IMPORT_ROWS = "importRows";
+    private static final TypeName DATE = ClassName.get(Date.class);
+
+    private EntityExporter() {
+    }
+
+    static ClassName getClassName(EntityClass entityClass) {
+        return entityClass.getGeneratedClassName(entityClass.getName() + SUFFIX_ADAPTER);
+    }
+
+    private static String fieldOf(EntityClass entityClass, String column) {
+        return entityClass.getColumns().get(column).getSimpleName().toString();
+    }
+
+    private static TypeName typeOf(EntityClass entityClass, String column) {
+        return TypeName.get(entityClass.getColumns().get(column).asType());
+    }
+
+    // Example: reader.nextLong(). Null if the type is not supported
+    static CodeBlock readValue(TypeName type) {
+        TypeName unboxed = type.isBoxedPrimitive() ? type.unbox() : type;
+        if (unboxed.equals(TypeName.LONG)) return CodeBlock.of("reader.nextLong()");
+        if (unboxed.equals(TypeName.INT)) return CodeBlock.of("reader.nextInt()");
+        if (unboxed.equals(TypeName.SHORT)) return CodeBlock.of("(short) reader.nextInt()");
+        if (unboxed.equals(TypeName.BYTE)) return CodeBlock.of("(byte) reader.nextInt()");
+        if (unboxed.equals(TypeName.DOUBLE)) return CodeBlock.of("reader.nextDouble()");
+        if (unboxed.equals(TypeName.FLOAT)) return CodeBlock.of("(float) reader.nextDouble()");
+        if (unboxed.equals(TypeName.BOOLEAN)) return CodeBlock.of("reader.nextBoolean()");
+        if (type.equals(TypeName.get(String.class))) return CodeBlock.of("reader.nextString()");
+        if (type.equals(DATE)) return CodeBlock.of("new $T(reader.nextLong())", Date.class);
+        return null;
+    }
+
+    // The writer has overloads for the primitive types, the numbers and the strings
+    private static CodeBlock writtenValue(TypeName type, CodeBlock value) {
+        return type.equals(DATE) ? CodeBlock.of("$L.getTime()", value) : value;
+    }
+
+    /**
+     * @return the constructor Room would use: the one without parameter, else the one whose parameters are all fields.
+     * Null if none
+     */
+    static ExecutableElement constructorOf(EntityClass entityClass) {
+        Set<String> fields = new HashSet<>();
+        for (VariableElement field: entityClass.getColumns().values()) {
+            fields.add(field.getSimpleName().toString());
+        }
+        ExecutableElement found = null;
+        for (ExecutableElement constructor: ElementFilter.constructorsIn(entityClass.getTypeElement().getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PRIVATE) || constructor.getAnnotation(Ignore.class) != null) continue;
+            if (constructor.getParameters().isEmpty()) return constructor;
+            boolean matches = true;
+            for (VariableElement parameter: constructor.getParameters()) {
+                matches &= fields.contains(parameter.getSimpleName().toString());
+            }
+            if (matches && found == null) found = constructor;
+        }
+        return found;
+    }
+
+    private static Set<String> constructorFields(EntityClass entityClass) {
+        Set<String> parameters = new HashSet<>();
+        for (VariableElement parameter: constructorOf(entityClass).getParameters()) {
+            parameters.add(parameter.getSimpleName().toString());
+        }
+        return parameters;
+    }
+
+    /**
+     * @return the columns set neither by the constructor nor by a setter, that can't be imported
+     */
+    static List<String> unsettableColumns(EntityClass entityClass) {
+        Set<String> parameters = constructorFields(entityClass);
+        List<String> columns = new ArrayList<>();
+        for (String column: entityClass.getColumns().keySet()) {
+            if (!parameters.contains(fieldOf(entityClass, column)) && entityClass.setterOf(column) == null) columns.add(column);
+        }
+        return columns;
+    }
+
+    private static MethodSpec writeMethod(EntityClass entityClass) {
+        MethodSpec.Builder write = MethodSpec.methodBuilder("write")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(JSON_WRITER_CLASS, "writer")
+                .addParameter(entityClass.getTypeName(), "item")
+                .addException(IOException.class)
+                .addStatement("writer.beginObject()");
+        for (String column: entityClass.getColumns().keySet()) {
+            TypeName type = typeOf(entityClass, column);
+            CodeBlock value = CodeBlock.of("item.$N()", entityClass.getterOf(column));
+            write.addStatement("writer.name($S)", column);
+            if (type.isPrimitive()) {
+                write.addStatement("writer.value($L)", value);
+            } else {
+                write.addStatement("if ($L == null) writer.nullValue()", value)
+                        .addStatement("else writer.value($L)", writtenValue(type, value));
+            }
+        }
+        return write.addStatement("writer.endObject()").build();
+    }
+
+    // The unknown names are skipped, so that a stream written by a later version of the entity can be read
+    private static MethodSpec readMethod(EntityClass entityClass) {
+        MethodSpec.Builder read = MethodSpec.methodBuilder("read")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(JSON_READER_CLASS, "reader")
+                .addException(IOException.class)
+                .returns(entityClass.getTypeName());
+        CodeBlock.Builder cases = CodeBlock.builder();
+        for (String column: entityClass.getColumns().keySet()) {
+            TypeName type = typeOf(entityClass, column);
+            String field = fieldOf(entityClass, column);
+            read.addStatement("$T $N = $L", type, field,
+                    !type.isPrimitive() ? "null" : type.equals(TypeName.BOOLEAN) ? "false" : "0");
+            cases.add("case $S:\n$>", column);
+            if (type.isPrimitive()) {
+                cases.addStatement("$N = $L", field, readValue(type));
+            } else {
+                cases.beginControlFlow("if (reader.peek() == $T.NULL)", JSON_TOKEN_CLASS)
+                        .addStatement("reader.nextNull()")
+                        .nextControlFlow("else")
+                        .addStatement("$N = $L", field, readValue(type))
+                        .endControlFlow();
+            }
+            cases.addStatement("break").add("$<");
+        }
+        read.addStatement("reader.beginObject()")
+                .beginControlFlow("while (reader.hasNext())")
+                .beginControlFlow("switch (reader.nextName())")
+                .addCode(cases.build())
+                .addCode("default:\n$>")
+                .addStatement("reader.skipValue()")
+                .addCode("$<")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("reader.endObject()");
+
+        List<CodeBlock> arguments = new ArrayList<>();
+        for (VariableElement parameter: constructorOf(entityClass).getParameters()) {
+            arguments.add(CodeBlock.of("$N", parameter.getSimpleName().toString()));
+        }
+        read.addStatement("$T item = new $T($L)", entityClass.getTypeName(), entityClass.getTypeName(), CodeBlock.join(arguments, ", "));
+        Set<String> parameters = constructorFields(entityClass);
+        for (String column: entityClass.getColumns().keySet()) {
+            String field = fieldOf(entityClass, column);
+            if (!parameters.contains(field)) read.addStatement("item.$N($N)", entityClass.setterOf(column), field);
+        }
+        return read.addStatement("return item").build();
+    }
+
+    static TypeSpec generateAdapterClass(EntityClass entityClass) {
+        return TypeSpec.classBuilder(getClassName(entityClass))
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addSuperinterface(ParameterizedTypeName.get(JSON_LINES_CLASS.nestedClass("Adapter"), entityClass.getTypeName()))
+                .addMethod(writeMethod(entityClass))
+                .addMethod(readMethod(entityClass))
+                .build();
+    }
+
+    // Room runs each list method in a transaction, joined by the transaction of importRows
+    static List<MethodSpec> generateDaoMethods(EntityClass entityClass) {
+        TypeName items = ParameterizedTypeName.get(ClassName.get(List.class), entityClass.getTypeName());
+        List<MethodSpec> methods = new ArrayList<>();
+        methods.add(MethodSpec.methodBuilder(IMPORT_INSERT)
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .addAnnotation(AnnotationSpec.builder(Insert.class)
+                        .addMember("onConflict", "$T.IGNORE", OnConflictStrategy.class)
+                        .build())
+                .addParameter(items, "items")
+                .returns(long[].class)
+                .build());
+        methods.add(MethodSpec.methodBuilder(IMPORT_UPDATE)
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .addAnnotation(Update.class)
+                .addParameter(items, "items")
+                .build());
+        return methods;
+    }
+
+    private static MethodSpec.Builder exportMethod() {
+        return MethodSpec.methodBuilder(EXPORT)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(OutputStream.class, "out")
+                .returns(ParameterizedTypeName.get(AsyncMethod.FUTURE_CLASS, TypeName.get(Integer.class)));
+    }
+
+    private static MethodSpec.Builder importMethod() {
+        return MethodSpec.methodBuilder(IMPORT)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(InputStream.class, "in")
+                .returns(ParameterizedTypeName.get(AsyncMethod.FUTURE_CLASS, TypeName.get(Integer.class)));
+    }
+
+    // The existing rows are updated rather than replaced: REPLACE deletes them without running the delete triggers
+    static List<MethodSpec> generateRepositoryMethods(EntityClass entityClass) {
+        String dao = entityClass.getDaoClassName().toLowerCase();
+        int batchSize = entityClass.getExportBatchSize();
+        List<MethodSpec> methods = new ArrayList<>();
+        methods.add(exportMethod()
+                .addStatement("return $T.submit($T.$N, () -> $T.write(out, $L, new $T()))",
+                        AsyncMethod.FUTURE_CLASS, entityClass.getDatabaseClassName(), READ_EXECUTOR,
+                        JSON_LINES_CLASS, RowStream.newIterator(entityClass, batchSize, "null", "null"), getClassName(entityClass))
+                .build());
+
+        CodeBlock read = CodeBlock.of("$T.read(in, new $T(), $L, this::$N)",
+                JSON_LINES_CLASS, getClassName(entityClass), batchSize, IMPORT_ROWS);
+        List<String> listeners = entityClass.getWriteListenerFields();
+        if (!listeners.isEmpty()) { // the imported rows are not kept, the listeners load them again
+            CodeBlock.Builder block = CodeBlock.builder().add("{ int count = $L; ", read);
+            for (String listener: listeners) {
+                block.add("$N.changed(); ", listener);
+            }
+            read = block.add("return count; }").build();
+        }
+        methods.add(importMethod()
+                .addStatement("return $T.submit($L, () -> $L)",
+                        AsyncMethod.FUTURE_CLASS, entityClass.writeExecutor(), read)
+                .build());
+
+        TypeName items = ParameterizedTypeName.get(ClassName.get(List.class), entityClass.getTypeName());
+        methods.add(MethodSpec.methodBuilder(IMPORT_ROWS)
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(items, "items")
+                .addCode("$L;\n", entityClass.inTransaction(CodeBlock.builder()
+                        .add("() -> {\n$>")
+                        .addStatement("long[] ids = $N.$N(items)", dao, IMPORT_INSERT)
+                        .addStatement("$T existing = new $T<>()", items, ArrayList.class)
+                        .beginControlFlow("for (int i = 0; i < ids.length; i++)")
+                        .addStatement("if (ids[i] == -1) existing.add(items.get(i))")
+                        .endControlFlow()
+                        .addStatement("if (!existing.isEmpty()) $N.$N(existing)", dao, IMPORT_UPDATE)
+                        .add("$<}")
+                        .build()))
+                .build());
+        return methods;
+    }
+
+    static List<MethodSpec> generateViewModelMethods(EntityClass entityClass) {
+        String repository = entityClass.getRepositoryClassName().toLowerCase();
+        List<MethodSpec> methods = new ArrayList<>();
+        methods.add(exportMethod()
+                .addStatement("return $N.$N(out)", repository, EXPORT)
+                .build());
+        methods.add(importMethod()
+                .addStatement("return $N.$N(in)", repository, IMPORT)
+                .build());
+        return methods;
+    }
+}
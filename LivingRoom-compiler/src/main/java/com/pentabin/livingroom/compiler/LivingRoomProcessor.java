@@ -4,22 +4,40 @@ import androidx.room.Database;
 import androidx.room.Entity;
 import androidx.room.TypeConverters;
 
+import com.pentabin.livingroom.annotations.Aggregate;
+import com.pentabin.livingroom.annotations.Aggregates;
 import com.pentabin.livingroom.annotations.Archivable;
+import com.pentabin.livingroom.annotations.Cached;
+import com.pentabin.livingroom.annotations.CoalesceWrites;
+import com.pentabin.livingroom.annotations.Countable;
 import com.pentabin.livingroom.annotations.Crudable;
 import com.pentabin.livingroom.annotations.DatabaseMeta;
 import com.pentabin.livingroom.annotations.DatabaseOnCreate;
 import com.pentabin.livingroom.annotations.DatabaseOnDestructiveMigration;
 import com.pentabin.livingroom.annotations.DatabaseOnOpen;
 import com.pentabin.livingroom.annotations.Deletable;
+import com.pentabin.livingroom.annotations.Diffable;
+import com.pentabin.livingroom.annotations.Editable;
+import com.pentabin.livingroom.annotations.Exportable;
+import com.pentabin.livingroom.annotations.InMemoryTable;
 import com.pentabin.livingroom.annotations.Insertable;
 import com.pentabin.livingroom.annotations.ManualMigrationMethod;
+import com.pentabin.livingroom.annotations.MutableWhere;
+import com.pentabin.livingroom.annotations.MutableWheres;
+import com.pentabin.livingroom.annotations.Searchable;
 import com.pentabin.livingroom.annotations.SelectableAll;
 import com.pentabin.livingroom.annotations.SelectableById;
+import com.pentabin.livingroom.annotations.SelectableKeyset;
+import com.pentabin.livingroom.annotations.SelectablePaged;
 import com.pentabin.livingroom.annotations.SelectableWhere;
 import com.pentabin.livingroom.annotations.SelectableWheres;
+import com.pentabin.livingroom.annotations.Streamable;
+import com.pentabin.livingroom.annotations.TrackRows;
 import com.pentabin.livingroom.annotations.Updatable;
+import com.pentabin.livingroom.annotations.Upsertable;
 import com.squareup.javapoet.AnnotationSpec;
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
@@ -28,7 +46,9 @@ import com.squareup.javapoet.TypeSpec;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +67,7 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.DeclaredType;
 import javax.tools.Diagnostic;
 
@@ -67,8 +88,25 @@ import static com.pentabin.livingroom.compiler.LivingroomMethod.selectWhereMetho
                 "com.pentabin.livingroom.annotations.Archivable",
                 "com.pentabin.livingroom.annotations.SelectableAll",
                 "com.pentabin.livingroom.annotations.SelectableById",
+                "com.pentabin.livingroom.annotations.SelectablePaged",
+                "com.pentabin.livingroom.annotations.SelectableKeyset",
                 "com.pentabin.livingroom.annotations.SelectableWhere",
                 "com.pentabin.livingroom.annotations.SelectableWheres",
+                "com.pentabin.livingroom.annotations.Countable",
+                "com.pentabin.livingroom.annotations.Aggregate",
+                "com.pentabin.livingroom.annotations.Aggregates",
+                "com.pentabin.livingroom.annotations.CoalesceWrites",
+                "com.pentabin.livingroom.annotations.Cached",
+                "com.pentabin.livingroom.annotations.InMemoryTable",
+                "com.pentabin.livingroom.annotations.Diffable",
+                "com.pentabin.livingroom.annotations.TrackRows",
+                "com.pentabin.livingroom.annotations.Upsertable",
+                "com.pentabin.livingroom.annotations.Editable",
+                "com.pentabin.livingroom.annotations.MutableWhere",
+                "com.pentabin.livingroom.annotations.MutableWheres",
+                "com.pentabin.livingroom.annotations.Searchable",
+                "com.pentabin.livingroom.annotations.Streamable",
+                "com.pentabin.livingroom.annotations.Exportable",
                 "com.pentabin.livingroom.annotations.DatabaseExtras",
         })
 @SupportedSourceVersion(SourceVersion.RELEASE_8)
@@ -79,6 +117,9 @@ public class LivingRoomProcessor extends AbstractProcessor {
     private static  String packageName; //TODO from the database class maybe?
     private static final String SUFFIX_DAO = "Dao"; // Todo remove
     static final String dbClassName = "LivingRoomDatabase";
+    static final String WRITE_EXECUTOR = "WRITE_EXECUTOR";
+    static final String READ_EXECUTOR = "READ_EXECUTOR";
+    static final String LIVE_DATA_CACHE_SIZE = "LIVE_DATA_CACHE_SIZE";
 
 
     @Override
@@ -92,15 +133,32 @@ public class LivingRoomProcessor extends AbstractProcessor {
 
     @Override
     public boolean process(Set<? extends TypeElement> set, RoundEnvironment env) {
+        parseSelectableAll(env); // first, the default order and distinct apply to the getAll methods of the other annotations
         parseCrudable(env);
         parseInsertable(env);
         parseDeletable(env);
         parseUpdatable(env);
         parseArchivable(env);
+        parseUpsertable(env);
+        parseMutableWhere(env);
+        parseMutableWheres(env);
+        parseEditable(env);
+        parseSearchable(env);
+        parseStreamable(env);
+        parseExportable(env);
         parseSelectable(env);
         parseSelectables(env);
-        parseSelectableAll(env);
         parseSelectableById(env);
+        parseSelectablePaged(env);
+        parseSelectableKeyset(env);
+        parseCountable(env);
+        parseAggregate(env);
+        parseAggregates(env);
+        parseCoalesceWrites(env);
+        parseInMemoryTable(env);
+        parseCached(env);
+        parseTrackRows(env);
+        parseDiffable(env);
         parseDatabaseExtras(env);
         parseDatabaseManualMigrations(env);
 
@@ -112,24 +170,39 @@ public class LivingRoomProcessor extends AbstractProcessor {
         return false;
     }
 
-    private void  parseAnnotation(Collection<? extends Element> elements, String method) {
+    private void  parseAnnotation(Collection<? extends Element> elements, String... methods) {
         for (Element e: elements ) {
             checkIfAnnotatedWithEntity(e);
             checkIfExtendsBasicEntity(e);
-            if (entitiesList.containsKey(e)) {
-                EntityClass entityClass = entitiesList.get(e);
-                entitiesList.get(e).addMethod(LivingroomMethod.of(entityClass, method));
+            if (!entitiesList.containsKey(e)) {
+                entitiesList.put((TypeElement) e, new EntityClass((TypeElement)e));
             }
-            else {
-                EntityClass entityClass = new EntityClass((TypeElement)e);
+            EntityClass entityClass = entitiesList.get(e);
+            for (String method: methods) {
                 entityClass.addMethod(LivingroomMethod.of(entityClass, method));
-                entitiesList.put((TypeElement) e, entityClass);
+            }
+        }
+    }
+
+    private void adviseIndexes(EntityClass entityClass) {
+        if (!entityClass.markIndexesAdvised()) return;
+        for (Map.Entry<String, List<String>> missing: entityClass.getMissingIndexes().entrySet()) {
+            if (autoIndexes) {
+                entityClass.addIndex(missing.getValue().toArray(new String[0]));
+            } else {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        entityClass.getDaoClassName() + "." + missing.getKey() + " filters on "
+                                + missing.getValue() + " without an index, declare @Index({\""
+                                + String.join("\", \"", missing.getValue()) + "\"}) in @Entity"
+                                + " or set @DatabaseMeta(autoIndexes = true)",
+                        entityClass.getTypeElement());
             }
         }
     }
 
     private void generateClasses() throws IOException {
         for (Map.Entry<TypeElement, EntityClass> e: entitiesList.entrySet()) {
+            adviseIndexes(e.getValue());
             generateCodeForEntity(e.getValue());
             entities.add(e.getValue().getTypeName());
         }
@@ -160,32 +233,93 @@ public class LivingRoomProcessor extends AbstractProcessor {
     private void parseInsertable(RoundEnvironment env) {
         Collection<? extends Element> insertableElements =
                 env.getElementsAnnotatedWith(Insertable.class);
-        parseAnnotation(insertableElements, INSERT);
+        parseAnnotation(insertableElements, INSERT, LivingroomMethod.INSERT_ALL);
     }
 
     private void parseDeletable(RoundEnvironment env) {
         Collection<? extends Element> deletableElements =
                 env.getElementsAnnotatedWith(Deletable.class);
-        parseAnnotation(deletableElements, LivingroomMethod.DELETE);
+        parseAnnotation(deletableElements, LivingroomMethod.DELETE, LivingroomMethod.DELETE_ALL);
     }
 
     private void parseUpdatable(RoundEnvironment env) {
         Collection<? extends Element> updatableElements =
                 env.getElementsAnnotatedWith(Updatable.class);
-        parseAnnotation(updatableElements, LivingroomMethod.UPDATE);
+        parseAnnotation(updatableElements, LivingroomMethod.UPDATE, LivingroomMethod.UPDATE_ALL);
     }
 
 
     private void parseArchivable(RoundEnvironment env) {
         Collection<? extends Element> archivableElements =
                 env.getElementsAnnotatedWith(Archivable.class);
-        parseAnnotation(archivableElements, LivingroomMethod.SOFT_DELETE);
+        parseAnnotation(archivableElements, LivingroomMethod.SOFT_DELETE, LivingroomMethod.SOFT_DELETE_ALL);
+    }
+
+    private void parseUpsertable(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(Upsertable.class);
+        parseAnnotation(elements);
+        for (Element e: elements) {
+            EntityClass entityClass = entitiesList.get(e);
+            String key = e.getAnnotation(Upsertable.class).key().isEmpty() ? "id" : e.getAnnotation(Upsertable.class).key();
+            if (!entityClass.getColumns().containsKey(key)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unknown column " + key + " in the key of @Upsertable", e);
+                continue;
+            }
+            if (!entityClass.isUnique(key)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "The key " + key + " of @Upsertable needs a unique index, see @Entity(indices)", e);
+                continue;
+            }
+            boolean readable = true;
+            for (String column: entityClass.getColumns().keySet()) {
+                if (entityClass.getterOf(column) == null) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "The column " + column + " needs a getter for @Upsertable", e);
+                    readable = false;
+                }
+            }
+            if (!readable) continue;
+            entityClass.setUpsertKey(key);
+            entityClass.addMethod(LivingroomMethod.of(entityClass, LivingroomMethod.UPSERT));
+            entityClass.addMethod(LivingroomMethod.of(entityClass, LivingroomMethod.UPSERT_ALL));
+        }
     }
 
     private void parseSelectableAll(RoundEnvironment env) {
         Collection<? extends Element> archivableElements =
                 env.getElementsAnnotatedWith(SelectableAll.class);
-        parseAnnotation(archivableElements, GET_ALL);
+        parseAnnotation(archivableElements);
+        for (Element e: archivableElements) {
+            SelectableAll a = e.getAnnotation(SelectableAll.class);
+            EntityClass entityClass = entitiesList.get(e);
+            entityClass.setDefaultOrder(a.orderBy());
+            entityClass.setDistinctAll(a.distinctUntilChanged());
+            entityClass.setIncrementalAll(a.incremental());
+            entityClass.setRefreshIntervalAll(a.refreshIntervalMillis());
+            if (a.incremental() && a.orderBy().isEmpty() && entityClass.getTypeElement().getAnnotation(InMemoryTable.class) != null)
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "getAll() of " + entityClass.getName() + " is served by the memory table, incremental is ignored", e);
+            entityClass.addMethod(LivingroomMethod.of(entityClass, GET_ALL));
+            if (a.columns().length == 0) continue;
+            ClassName projection = addProjection(e, entityClass, LivingroomMethod.GET_ALL_PROJECTED,
+                    a.projection().isEmpty() ? entityClass.getName() + "Projection" : a.projection(), a.columns());
+            if (projection == null) continue;
+            entityClass.addMethod(LivingroomMethod.selectAllProjectedMethod(entityClass, projection, Arrays.asList(a.columns())));
+        }
+    }
+
+    // Checks the projected columns and registers the projection class to generate. Null if a column is unknown
+    private ClassName addProjection(Element e, EntityClass entityClass, String methodName, String simpleName, String[] columns) {
+        Set<String> known = entityClass.getColumns().keySet();
+        boolean valid = true;
+        for (String column: columns) {
+            if (!known.contains(column)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unknown column " + column + " in the projection of " + methodName, e);
+                valid = false;
+            }
+        }
+        if (!valid) return null;
+        if (!entityClass.addProjection(simpleName, Arrays.asList(columns)))
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "The projection " + simpleName + " is already declared with other columns", e);
+        return entityClass.getProjectionClassName(simpleName);
     }
 
     private void parseSelectableById(RoundEnvironment env) {
@@ -194,6 +328,91 @@ public class LivingRoomProcessor extends AbstractProcessor {
         parseAnnotation(archivableElements, GET_BY_ID);
     }
 
+    private void parseCoalesceWrites(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(CoalesceWrites.class);
+        for (Element e: elements) {
+            CoalesceWrites a = e.getAnnotation(CoalesceWrites.class);
+            if (entitiesList.containsKey(e)) {
+                entitiesList.get(e).setCoalesceWrites(a.maxBatchSize(), a.windowMillis());
+            } else {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "@CoalesceWrites has no effect without a LivingRoom write annotation", e);
+            }
+        }
+    }
+
+    private void parseInMemoryTable(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(InMemoryTable.class);
+        for (Element e: elements) {
+            InMemoryTable a = e.getAnnotation(InMemoryTable.class);
+            if (!entitiesList.containsKey(e)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "@InMemoryTable has no effect without a LivingRoom annotation", e);
+                continue;
+            }
+            EntityClass entityClass = entitiesList.get(e);
+            List<String> keys = new ArrayList<>();
+            for (String key: a.keys()) {
+                if (!entityClass.getColumns().containsKey(key))
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unknown column " + key + " in the keys of @InMemoryTable", e);
+                else if (entityClass.getterOf(key) == null)
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "The key " + key + " of @InMemoryTable needs a getter", e);
+                else keys.add(key);
+            }
+            entityClass.setInMemory(keys);
+        }
+    }
+
+    private void parseDiffable(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(Diffable.class);
+        parseAnnotation(elements);
+        for (Element e: elements) {
+            EntityClass entityClass = entitiesList.get(e);
+            List<String> fields = new ArrayList<>();
+            for (String field: e.getAnnotation(Diffable.class).fields()) {
+                if (!entityClass.getColumns().containsKey(field))
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unknown column " + field + " in the fields of @Diffable", e);
+                else if (entityClass.getterOf(field) == null)
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "The field " + field + " of @Diffable needs a getter", e);
+                else fields.add(field);
+            }
+            entityClass.setDiffable(fields);
+        }
+    }
+
+    private void parseCached(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(Cached.class);
+        for (Element e: elements) {
+            Cached a = e.getAnnotation(Cached.class);
+            if (entitiesList.containsKey(e) && entitiesList.get(e).isInMemory()) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "@Cached has no effect on an @InMemoryTable", e);
+            } else if (entitiesList.containsKey(e)) {
+                entitiesList.get(e).setCached(a.maxEntries());
+            } else {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "@Cached has no effect without a LivingRoom annotation", e);
+            }
+        }
+    }
+
+    private void parseTrackRows(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(TrackRows.class);
+        for (Element e: elements) {
+            EntityClass entityClass = entitiesList.get(e);
+            if (entityClass == null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "@TrackRows has no effect without a LivingRoom annotation", e);
+            } else if (entityClass.isInMemory()) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "@TrackRows has no effect on an @InMemoryTable", e);
+            } else if (!entityClass.hasMethod(GET_BY_ID)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "@TrackRows has no effect without getById, see @SelectableById", e);
+            } else {
+                entityClass.setTrackingRows(true);
+            }
+        }
+    }
+
     private String versionValue = "1";
     private String exportSchemaValue = "true";
     private String autoMigrationRawCode = "{}";
@@ -201,6 +420,10 @@ public class LivingRoomProcessor extends AbstractProcessor {
     private String onOpenMethodName = "";
     private String onCreateMethodName = "";
     private String onDestructiveMigrationMethodName = "";
+    private String writeThreadsValue = "1";
+    private String readThreadsValue = "0";
+    private boolean autoIndexes = false;
+    private String liveDataCacheSizeValue = "64";
 
     private void parseDatabaseCallbackClass(String databaseCallbackSimpleClassName, RoundEnvironment env) {
 
@@ -239,7 +462,8 @@ public class LivingRoomProcessor extends AbstractProcessor {
 
     }
 
-    private ArrayList<String> manualMigrations = new ArrayList<>();
+    // from, to and the qualified name of the migration method
+    private ArrayList<String[]> manualMigrations = new ArrayList<>();
 
     private void parseDatabaseManualMigrations(RoundEnvironment env) {
         Collection<? extends Element> manualMigrationMethodElements =
@@ -266,11 +490,7 @@ public class LivingRoomProcessor extends AbstractProcessor {
                     }
                 }
                 annotationElement.getElementValues().get("from");
-                manualMigrations.add("new androidx.room.migration.Migration("+from+", "+to+") {\n" +
-                        "               @Override\n" +
-                        "               public void migrate(androidx.sqlite.db.SupportSQLiteDatabase database) {\n" +
-                        "                   "+migrationMethodToBecalled+"(database);\n"+
-                        "               }}");
+                manualMigrations.add(new String[]{from, to, migrationMethodToBecalled});
             }
         }
     }
@@ -303,6 +523,18 @@ public class LivingRoomProcessor extends AbstractProcessor {
                                     "    " + autoMigrationsValue.toString() + ", " +
                                     "  }";
                             //processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, autoMigrationRawCode);
+                        } else if(annotationValues.getSimpleName().contentEquals("writeThreads")) {
+                            //saving the size of the write executor
+                            writeThreadsValue = annotationElement.getElementValues().get(annotationValues).getValue().toString();
+                        } else if(annotationValues.getSimpleName().contentEquals("autoIndexes")) {
+                            //saving whether the missing indexes are created or only reported
+                            autoIndexes = Boolean.parseBoolean(annotationElement.getElementValues().get(annotationValues).getValue().toString());
+                        } else if(annotationValues.getSimpleName().contentEquals("liveDataCacheSize")) {
+                            //saving the number of LiveData cached by each repository
+                            liveDataCacheSizeValue = annotationElement.getElementValues().get(annotationValues).getValue().toString();
+                        } else if(annotationValues.getSimpleName().contentEquals("readThreads")) {
+                            //saving the size of the read executor
+                            readThreadsValue = annotationElement.getElementValues().get(annotationValues).getValue().toString();
                         } else if(annotationValues.getSimpleName().contentEquals("databaseCallbacks")) {
                             //processing if database callbacks are defined
                             databaseCallbackQualifiedClassName = annotationElement.getElementValues().get(annotationValues).getValue().toString();
@@ -315,53 +547,233 @@ public class LivingRoomProcessor extends AbstractProcessor {
         }
     }
 
-    private void parseSelectable(RoundEnvironment env) { // TODO refactor
+    // The bookkeeping columns are set by the repository, see archive for isDeleted
+    private void parseEditable(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(Editable.class);
+        parseAnnotation(elements);
+        List<String> bookkeeping = Arrays.asList("id", "created_at", "updated_at", "isDeleted");
+        for (Element e: elements) {
+            EntityClass entityClass = entitiesList.get(e);
+            List<String> columns = new ArrayList<>();
+            for (String column: entityClass.getColumns().keySet()) {
+                if (bookkeeping.contains(column)) continue;
+                if (entityClass.getterOf(column) == null || entityClass.setterOf(column) == null)
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "The column " + column + " needs a getter and a setter to be edited", e);
+                else columns.add(column);
+            }
+            if (columns.size() > EntityEditor.MAX_COLUMNS) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@Editable supports up to " + EntityEditor.MAX_COLUMNS + " columns", e);
+                continue;
+            }
+            entityClass.setEditable(columns);
+        }
+    }
+
+    // The indexed columns are read by the triggers of the full-text index, they must exist with the same names
+    private void parseSearchable(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(Searchable.class);
+        parseAnnotation(elements);
+        for (Element e: elements) {
+            Searchable a = e.getAnnotation(Searchable.class);
+            EntityClass entityClass = entitiesList.get(e);
+            boolean valid = a.fields().length > 0;
+            if (!valid)
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@Searchable needs at least one field", e);
+            for (String field: a.fields()) {
+                VariableElement column = entityClass.getColumns().get(field);
+                if (column == null) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unknown column " + field + " in the fields of @Searchable", e);
+                    valid = false;
+                } else if (!TypeName.get(column.asType()).equals(TypeName.get(String.class))) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "The column " + field + " of @Searchable must be a String", e);
+                    valid = false;
+                }
+            }
+            if (!valid) continue;
+            entityClass.setSearchable(Arrays.asList(a.fields()), a.snippets());
+            entityClass.addMethod(new SearchMethod(entityClass, a.methodName(), a.ranked(), false));
+            if (a.snippets())
+                entityClass.addMethod(new SearchMethod(entityClass, a.methodName() + SearchMethod.SUFFIX_SNIPPETS, a.ranked(), true));
+        }
+    }
+
+    private void parseStreamable(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(Streamable.class);
+        parseAnnotation(elements);
+        for (Element e: elements) {
+            int chunkSize = e.getAnnotation(Streamable.class).chunkSize();
+            if (chunkSize <= 0) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "The chunkSize of @Streamable must be positive", e);
+                continue;
+            }
+            entitiesList.get(e).setStreamable(chunkSize);
+        }
+    }
+
+    // The adapter reads and writes every column, and builds the items as Room does: by a constructor then the setters
+    private void parseExportable(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(Exportable.class);
+        parseAnnotation(elements);
+        for (Element e: elements) {
+            EntityClass entityClass = entitiesList.get(e);
+            int batchSize = e.getAnnotation(Exportable.class).batchSize();
+            boolean valid = batchSize > 0;
+            if (!valid)
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "The batchSize of @Exportable must be positive", e);
+            for (Map.Entry<String, VariableElement> column: entityClass.getColumns().entrySet()) {
+                if (EntityExporter.readValue(TypeName.get(column.getValue().asType())) == null) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "The column " + column.getKey() + " of type " + column.getValue().asType() + " can't be exported", e);
+                    valid = false;
+                } else if (entityClass.getterOf(column.getKey()) == null) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "The column " + column.getKey() + " needs a getter for @Exportable", e);
+                    valid = false;
+                }
+            }
+            if (EntityExporter.constructorOf(entityClass) == null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@Exportable needs a constructor without parameter, or whose parameters are fields", e);
+                continue;
+            }
+            for (String column: EntityExporter.unsettableColumns(entityClass)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "The column " + column + " needs a setter or a constructor parameter for @Exportable", e);
+                valid = false;
+            }
+            if (valid) entityClass.setExportable(batchSize);
+        }
+    }
+
+    private void parseMutableWhere(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(MutableWhere.class);
+        parseAnnotation(elements);
+        for (Element e: elements) {
+            addMutableWhere(e, e.getAnnotation(MutableWhere.class));
+        }
+    }
+
+    private void parseMutableWheres(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(MutableWheres.class);
+        parseAnnotation(elements);
+        for (Element e: elements) {
+            for (MutableWhere a: e.getAnnotation(MutableWheres.class).value()) {
+                addMutableWhere(e, a);
+            }
+        }
+    }
+
+    private void addMutableWhere(Element e, MutableWhere a) {
+        if (!a.delete() && a.set().trim().isEmpty()) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@MutableWhere " + a.methodName() + " needs a set clause, or delete = true", e);
+            return;
+        }
+        EntityClass entityClass = entitiesList.get(e);
+        entityClass.addMethod(new MutateMethod(entityClass, a.methodName(), a.set(), a.where(), a.params(), a.delete()));
+    }
+
+    private void parseSelectable(RoundEnvironment env) {
         Collection<? extends Element> elements =
                 env.getElementsAnnotatedWith(SelectableWhere.class);
 
         for (Element e: elements ) {
-            SelectableWhere a = e.getAnnotation(SelectableWhere.class);
-            if (entitiesList.containsKey(e)) {
-                entitiesList.get(e).addMethod(
-                        selectWhereMethod(entitiesList.get(e),
-                                a.methodName(),
-                                a.where(),
-                                a.params(), true));
-            } else {
-                EntityClass entityClass = new EntityClass((TypeElement) e);
-                entityClass.addMethod(
-                        selectWhereMethod(entitiesList.get(e),
-                                a.methodName(),
-                                a.where(),
-                                a.params(), true));
-                entitiesList.put((TypeElement) e, entityClass);
-            }
+            addSelectableWhere(e, e.getAnnotation(SelectableWhere.class));
         }
     }
 
-    private void parseSelectables(RoundEnvironment env) { // TODO refactor
+    private void parseSelectables(RoundEnvironment env) {
         Collection<? extends Element> elements =
                 env.getElementsAnnotatedWith(SelectableWheres.class);
 
         for (Element e: elements ) {
             for (SelectableWhere a: e.getAnnotation(SelectableWheres.class).value() ) {
+                addSelectableWhere(e, a);
+            }
+        }
+    }
 
-                if (entitiesList.containsKey(e)) {
-                    entitiesList.get(e).addMethod(
-                            selectWhereMethod(entitiesList.get(e),
-                                    a.methodName(),
-                                    a.where(),
-                                    a.params(), true));
-                } else {
-                    EntityClass entityClass = new EntityClass((TypeElement) e);
-                    entityClass.addMethod(
-                            selectWhereMethod(entitiesList.get(e),
-                                    a.methodName(),
-                                    a.where(),
-                                    a.params(), true));
-                    entitiesList.put((TypeElement) e, entityClass);
-                }
+    private void addSelectableWhere(Element e, SelectableWhere a) {
+        if (!entitiesList.containsKey(e)) {
+            entitiesList.put((TypeElement) e, new EntityClass((TypeElement) e));
+        }
+        EntityClass entityClass = entitiesList.get(e);
+        SelectMethod method = (SelectMethod) selectWhereMethod(entityClass, a);
+        if (a.columns().length > 0) {
+            String methodName = a.methodName();
+            ClassName projection = addProjection(e, entityClass, methodName, a.projection().isEmpty()
+                    ? entityClass.getName() + Character.toUpperCase(methodName.charAt(0)) + methodName.substring(1) + "Projection"
+                    : a.projection(), a.columns());
+            if (projection == null) return;
+            method.setProjection(projection, Arrays.asList(a.columns()));
+        }
+        entityClass.addMethod(method);
+    }
+
+    private void parseCountable(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(Countable.class);
+        parseAnnotation(elements, LivingroomMethod.COUNT);
+    }
+
+    private void parseAggregate(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(Aggregate.class);
+
+        for (Element e: elements ) {
+            addAggregate(e, e.getAnnotation(Aggregate.class));
+        }
+    }
+
+    private void parseAggregates(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(Aggregates.class);
+
+        for (Element e: elements ) {
+            for (Aggregate a: e.getAnnotation(Aggregates.class).value() ) {
+                addAggregate(e, a);
+            }
+        }
+    }
+
+    private void addAggregate(Element e, Aggregate a) {
+        parseAnnotation(Collections.singletonList(e));
+        EntityClass entityClass = entitiesList.get(e);
+        TypeName columnType = null;
+        if (!a.column().isEmpty()) {
+            VariableElement field = entityClass.getColumns().get(a.column());
+            if (field == null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unknown column " + a.column() + " in " + a.methodName(), e);
+                return;
             }
+            columnType = TypeName.get(field.asType());
+        } else if (a.function() != Aggregate.Function.COUNT && a.function() != Aggregate.Function.EXISTS) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, a.function() + " needs a column in " + a.methodName(), e);
+            return;
+        }
+        entityClass.addMethod(LivingroomMethod.aggregateMethod(entityClass, a.methodName(), a.function(),
+                a.column(), a.where(), a.params(), columnType));
+    }
+
+    private void parseSelectablePaged(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(SelectablePaged.class);
+        parseAnnotation(elements, LivingroomMethod.GET_ALL_PAGED);
+        for (Element e: elements) {
+            SelectablePaged a = e.getAnnotation(SelectablePaged.class);
+            entitiesList.get(e).setPageConfig(a.pageSize(), a.prefetchDistance());
+        }
+    }
+
+    private void parseSelectableKeyset(RoundEnvironment env) {
+        Collection<? extends Element> elements =
+                env.getElementsAnnotatedWith(SelectableKeyset.class);
+        parseAnnotation(elements);
+        for (Element e: elements) {
+            EntityClass entityClass = entitiesList.get(e);
+            entityClass.addMethods(LivingroomMethod.keyset(entityClass,
+                    e.getAnnotation(SelectableKeyset.class).includeArchived()));
         }
     }
 
@@ -377,6 +789,11 @@ public class LivingRoomProcessor extends AbstractProcessor {
             generateDaoClass(clazz);
             generateRepositoryClass(clazz);
             generateViewModelClass(clazz);
+            generateProjectionClasses(clazz);
+            if (clazz.isDiffable()) generateDiffableClasses(clazz);
+            if (clazz.isEditable()) generateEditorClass(clazz);
+            if (clazz.hasSearchSnippets()) generateSearchResultClass(clazz);
+            if (clazz.isExportable()) generateJsonAdapterClass(clazz);
         } catch (FilerException e) {
 
         }
@@ -386,8 +803,9 @@ public class LivingRoomProcessor extends AbstractProcessor {
     private void checkIfExtendsBasicEntity(Element annotatedElement){
         TypeElement superClassTypeElement =
                 (TypeElement)((DeclaredType)((TypeElement)annotatedElement).getSuperclass()).asElement();
-        if (!superClassTypeElement.getSimpleName().toString().equals("BasicEntity"))
-            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Your entity class must inherit from BasicEntity in order to use LivingRoom annotations", annotatedElement);
+        String superClassName = superClassTypeElement.getSimpleName().toString();
+        if (!superClassName.equals("BasicEntity") && !superClassName.equals(EntityClass.MILLIS_ENTITY))
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Your entity class must inherit from BasicEntity or BasicMillisEntity in order to use LivingRoom annotations", annotatedElement);
 
     }
     private void checkIfAnnotatedWithEntity(Element annotatedElement){
@@ -410,6 +828,31 @@ public class LivingRoomProcessor extends AbstractProcessor {
         javaFile.writeTo(filer);
     }
 
+    private void generateDiffableClasses(EntityClass clazz) throws IOException {
+        Filer filer = processingEnv.getFiler();
+        JavaFile.builder(packageName, clazz.generateDiffCallbackClass()).build().writeTo(filer);
+        JavaFile.builder(packageName, clazz.generateListAdapterClass()).build().writeTo(filer);
+    }
+
+    private void generateEditorClass(EntityClass clazz) throws IOException {
+        JavaFile.builder(packageName, EntityEditor.generateEditorClass(clazz)).build().writeTo(processingEnv.getFiler());
+    }
+
+    private void generateSearchResultClass(EntityClass clazz) throws IOException {
+        JavaFile.builder(packageName, SearchMethod.generateResultClass(clazz)).build().writeTo(processingEnv.getFiler());
+    }
+
+    private void generateJsonAdapterClass(EntityClass clazz) throws IOException {
+        JavaFile.builder(packageName, EntityExporter.generateAdapterClass(clazz)).build().writeTo(processingEnv.getFiler());
+    }
+
+    private void generateProjectionClasses(EntityClass clazz) throws IOException {
+        Filer filer = processingEnv.getFiler();
+        for (TypeSpec projection: clazz.generateProjectionClasses()) {
+            JavaFile.builder(packageName, projection).build().writeTo(filer);
+        }
+    }
+
     private void generateRepositoryClass(EntityClass clazz) throws IOException {
         JavaFile javaFile = JavaFile.builder(packageName, clazz.generateRepositoryClass()).build();
         Filer filer = processingEnv.getFiler();
@@ -417,8 +860,42 @@ public class LivingRoomProcessor extends AbstractProcessor {
         javaFile.writeTo(filer);
     }
 
+    // The indexes created in onOpen are dropped after each manual migration,
+    // Room validates the migrated schema against the indices declared on the entities only
+    private String generateManualMigration(String[] migration, String dropIndexes) {
+        return "new androidx.room.migration.Migration("+migration[0]+", "+migration[1]+") {\n" +
+                "               @Override\n" +
+                "               public void migrate(androidx.sqlite.db.SupportSQLiteDatabase database) {\n" +
+                "                   "+migration[2]+"(database);\n"+
+                dropIndexes +
+                "               }}";
+    }
+
     private void generateDatabaseClass() throws IOException {
         final String instanceName = "INSTANCE";
+        StringBuilder createIndexes = new StringBuilder();
+        StringBuilder dropIndexes = new StringBuilder();
+        StringBuilder dropSearchIndexes = new StringBuilder();
+        for (EntityClass entityClass: entitiesList.values()) {
+            for (String statement: entityClass.getCreateIndexStatements()) {
+                createIndexes.append("                           db.execSQL(\"").append(statement).append("\");\n");
+            }
+            for (String statement: entityClass.getDropIndexStatements()) {
+                dropIndexes.append("                   database.execSQL(\"").append(statement).append("\");\n");
+            }
+            // The full-text indexes are dropped when the tables may have been recreated, and filled again by the next open
+            if (entityClass.isSearchable()) {
+                String table = "\"" + entityClass.getName() + "\"";
+                createIndexes.append("                           ").append(SearchMethod.FULL_TEXT_INDEX_CLASS).append(".create(db, ")
+                        .append(table).append(", \"").append(String.join("\", \"", entityClass.getSearchFields())).append("\");\n");
+                dropIndexes.append("                   ").append(SearchMethod.FULL_TEXT_INDEX_CLASS).append(".drop(database, ").append(table).append(");\n");
+                dropSearchIndexes.append(SearchMethod.FULL_TEXT_INDEX_CLASS).append(".drop(db, ").append(table).append(");\n                           ");
+            }
+        }
+        List<String> migrations = new ArrayList<>();
+        for (String[] migration: manualMigrations) {
+            migrations.add(generateManualMigration(migration, dropIndexes.toString()));
+        }
         final String dataBaseName = "custom_database";
         StringBuilder listEntities = new StringBuilder("{");
         List<MethodSpec> listDaoMethods = new ArrayList<>();
@@ -439,6 +916,24 @@ public class LivingRoomProcessor extends AbstractProcessor {
                 .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.VOLATILE).build();
         listEntities.append("}");
 
+        ClassName executors = ClassName.get("java.util.concurrent", "Executors");
+        FieldSpec writeExecutor = FieldSpec.builder(ClassName.get("java.util.concurrent", "ExecutorService"), WRITE_EXECUTOR)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .initializer(Integer.parseInt(writeThreadsValue) <= 1
+                        ? CodeBlock.of("$T.newSingleThreadExecutor()", executors)
+                        : CodeBlock.of("$T.newFixedThreadPool($L)", executors, writeThreadsValue))
+                .build();
+        FieldSpec readExecutor = FieldSpec.builder(ClassName.get("java.util.concurrent", "ExecutorService"), READ_EXECUTOR)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .initializer(Integer.parseInt(readThreadsValue) <= 0
+                        ? CodeBlock.of("$T.newFixedThreadPool(Runtime.getRuntime().availableProcessors())", executors)
+                        : CodeBlock.of("$T.newFixedThreadPool($L)", executors, readThreadsValue))
+                .build();
+        FieldSpec liveDataCacheSize = FieldSpec.builder(TypeName.INT, LIVE_DATA_CACHE_SIZE)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", liveDataCacheSizeValue)
+                .build();
+
         MethodSpec getDatabase = MethodSpec.methodBuilder("getDatabase")
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
                 .addParameter(ClassName.get("android.content",
@@ -452,6 +947,7 @@ public class LivingRoomProcessor extends AbstractProcessor {
                                 "                    $T.class, \""+dataBaseName+"\")\n" +
                                 "                    .fallbackToDestructiveMigration()\n" +
                                 "                    .enableMultiInstanceInvalidation()\n"+
+                                "                    .setQueryExecutor("+READ_EXECUTOR+")\n"+
                                 "                    .addCallback(new RoomDatabase.Callback() {\n" +
                                 "                       @Override\n" +
                                 "                       public void onCreate(androidx.sqlite.db.SupportSQLiteDatabase db) {\n" +
@@ -463,16 +959,17 @@ public class LivingRoomProcessor extends AbstractProcessor {
                                 "                       @Override\n" +
                                 "                       public void onOpen(androidx.sqlite.db.SupportSQLiteDatabase db) {\n" +
                                 "                           super.onOpen(db);\n" +
+                                createIndexes +
                                 "                           "+onOpenMethodName+"\n" +
                                 "                       }\n" +
                                 "\n" +
                                 "                       @Override\n" +
                                 "                       public void onDestructiveMigration(androidx.sqlite.db.SupportSQLiteDatabase db) {\n" +
                                 "                           super.onDestructiveMigration(db);\n" +
-                                "                           "+onDestructiveMigrationMethodName+"\n" +
+                                "                           "+dropSearchIndexes+onDestructiveMigrationMethodName+"\n" +
                                 "                       }\n" +
                                 "                       })\n"+
-                                "                   .addMigrations("+String.join(",",manualMigrations)+")\n" +
+                                "                   .addMigrations("+String.join(",",migrations)+")\n" +
                                 "                   .build();\n" +
                                 "        }\n" +
                                 "    }\n" +
@@ -495,6 +992,9 @@ public class LivingRoomProcessor extends AbstractProcessor {
                         .addMember("value", "$T.class", ClassName.get("com.pentabin.livingroom", "DateConverter") )
                         .build())
                 .addField(instance)
+                .addField(writeExecutor)
+                .addField(readExecutor)
+                .addField(liveDataCacheSize)
                 .addMethods(listDaoMethods)
                 .addMethod(getDatabase)
                 .build();
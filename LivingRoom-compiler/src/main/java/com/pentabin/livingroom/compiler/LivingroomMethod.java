@@ -4,14 +4,19 @@ import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.Update;
 
+import com.pentabin.livingroom.annotations.Aggregate;
+import com.pentabin.livingroom.annotations.SelectableWhere;
+
+import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -25,17 +30,40 @@ abstract class LivingroomMethod {
     private final Map<String, TypeName> params;
     private TypeName returnType;
 
+    private static final Map<String, TypeName> PRIMITIVES = new HashMap<>();
+    static {
+        PRIMITIVES.put("boolean", TypeName.BOOLEAN);
+        PRIMITIVES.put("byte", TypeName.BYTE);
+        PRIMITIVES.put("short", TypeName.SHORT);
+        PRIMITIVES.put("int", TypeName.INT);
+        PRIMITIVES.put("long", TypeName.LONG);
+        PRIMITIVES.put("char", TypeName.CHAR);
+        PRIMITIVES.put("float", TypeName.FLOAT);
+        PRIMITIVES.put("double", TypeName.DOUBLE);
+    }
+
     static final String INSERT = "insert";
     static final String DELETE = "delete";
     static final String SOFT_DELETE = "archive";
     static final String UPDATE = "update";
     static final String GET_ALL = "getAll";
     static final String GET_BY_ID = "getById";
+    static final String GET_ALL_PAGED = "getAllPaged";
+    static final String GET_ALL_PROJECTED = "getAllProjected";
+    static final String COUNT = "count";
+    static final String GET_PAGE_AFTER = "getPageAfter";
+    static final String GET_PAGE_BEFORE = "getPageBefore";
+    static final String INSERT_ALL = "insertAll";
+    static final String DELETE_ALL = "deleteAll";
+    static final String SOFT_DELETE_ALL = "archiveAll";
+    static final String UPDATE_ALL = "updateAll";
+    static final String UPSERT = "upsert";
+    static final String UPSERT_ALL = "upsertAll";
 
     LivingroomMethod(EntityClass entityClass, String methodName) {
         this.entityClass = entityClass;
         this.methodName = methodName;
-        this.params = new HashMap<>();
+        this.params = new LinkedHashMap<>(); // keeps the declaration order of the parameters
     }
 
     static LivingroomMethod of(EntityClass entityClass, String methodName) {
@@ -52,6 +80,22 @@ abstract class LivingroomMethod {
                 return selectAllMethod(entityClass);
             case GET_BY_ID:
                 return selectByIdMethod(entityClass);
+            case GET_ALL_PAGED:
+                return selectAllPagedMethod(entityClass);
+            case COUNT:
+                return aggregateMethod(entityClass, COUNT, Aggregate.Function.COUNT, "", "isDeleted = 0", null, null);
+            case INSERT_ALL:
+                return insertAllMethod(entityClass);
+            case DELETE_ALL:
+                return deleteAllMethod(entityClass);
+            case SOFT_DELETE_ALL:
+                return archiveAllMethod(entityClass);
+            case UPDATE_ALL:
+                return updateAllMethod(entityClass);
+            case UPSERT:
+                return upsertMethod(entityClass);
+            case UPSERT_ALL:
+                return upsertAllMethod(entityClass);
             default:
         }
         return null;
@@ -63,8 +107,9 @@ abstract class LivingroomMethod {
         method.addParam(entityClass.getTypeName(), "item");
         method.setReturnType(TypeName.get(Long.class));
         method.setPreCode(CodeBlock.builder()
-                .addStatement("item.setCreated_at(new $T())", Date.class) //TODO CreatedAt string as constant!!
+                .addStatement("item.setCreated_at($L)", entityClass.now()) //TODO CreatedAt string as constant!!
                 .build());
+        method.setCacheUpdate("inserted");
         return method;
     }
 
@@ -73,6 +118,7 @@ abstract class LivingroomMethod {
         method.addParam(entityClass.getTypeName(), "item");
         method.setReturnType(TypeName.get(Void.class));
         method.setAnnotation(Delete.class);
+        method.setCacheUpdate("removed");
         return method;
     }
 
@@ -82,26 +128,187 @@ abstract class LivingroomMethod {
         method.addParam(entityClass.getTypeName(), "item");
         method.setReturnType(TypeName.get(Void.class));
         method.setPreCode(CodeBlock.builder()
-                .addStatement("item.setUpdated_at(new $T())", Date.class)
+                .addStatement("item.setUpdated_at($L)", entityClass.now())
                 .build());
+        method.setCacheUpdate("written");
         return method;
     }
 
 
     private static LivingroomMethod archiveMethod(EntityClass entityClass) {
-        AsyncMethod method = new AsyncMethod(entityClass, UPDATE);
+        AsyncMethod method = new AsyncMethod(entityClass, SOFT_DELETE);
         method.setAnnotation(Update.class);
         method.addParam(entityClass.getTypeName(), "item");
         method.setReturnType(TypeName.get(Void.class));
         method.setPreCode(CodeBlock.builder()
-                .addStatement("item.setUpdated_at(new $T())", Date.class)
+                .addStatement("item.setUpdated_at($L)", entityClass.now())
+                .addStatement("item.setDeleted($N)", "true")
+                .build());
+        method.setCacheUpdate("written");
+        return method;
+    }
+
+    // created_at is set by the repository only if the item is inserted, see UpsertMethod
+    private static LivingroomMethod upsertMethod(EntityClass entityClass) {
+        AsyncMethod method = new UpsertMethod(entityClass, UPSERT);
+        method.addParam(entityClass.getTypeName(), "item");
+        method.setReturnType(TypeName.get(Long.class));
+        method.setPreCode(CodeBlock.builder()
+                .addStatement("item.setUpdated_at($L)", entityClass.now())
+                .build());
+        method.setCacheUpdate("inserted");
+        return method;
+    }
+
+    // Batch variants: Room runs each one in a single transaction
+    private static TypeName listOf(EntityClass entityClass) {
+        return ParameterizedTypeName.get(ClassName.get(List.class), entityClass.getTypeName());
+    }
+
+    private static LivingroomMethod insertAllMethod(EntityClass entityClass) {
+        AsyncMethod method = new AsyncMethod(entityClass, INSERT_ALL);
+        method.setAnnotation(Insert.class);
+        method.addParam(listOf(entityClass), "items");
+        method.setReturnType(ArrayTypeName.of(TypeName.LONG));
+        method.setPreCode(CodeBlock.builder()
+                .addStatement("$T now = $L", entityClass.getTimestampType(), entityClass.now())
+                .beginControlFlow("for ($T item : items)", entityClass.getTypeName())
+                .addStatement("item.setCreated_at(now)")
+                .endControlFlow()
+                .build());
+        method.setCacheUpdate("inserted");
+        return method;
+    }
+
+    private static LivingroomMethod upsertAllMethod(EntityClass entityClass) {
+        AsyncMethod method = new UpsertMethod(entityClass, UPSERT_ALL);
+        method.addParam(listOf(entityClass), "items");
+        method.setReturnType(ArrayTypeName.of(TypeName.LONG));
+        method.setPreCode(CodeBlock.builder()
+                .addStatement("$T now = $L", entityClass.getTimestampType(), entityClass.now())
+                .beginControlFlow("for ($T item : items)", entityClass.getTypeName())
+                .addStatement("item.setUpdated_at(now)")
+                .endControlFlow()
+                .build());
+        method.setCacheUpdate("inserted");
+        return method;
+    }
+
+    private static LivingroomMethod deleteAllMethod(EntityClass entityClass) {
+        AsyncMethod method = new AsyncMethod(entityClass, DELETE_ALL);
+        method.addParam(listOf(entityClass), "items");
+        method.setReturnType(TypeName.get(Void.class));
+        method.setAnnotation(Delete.class);
+        method.setCacheUpdate("removed");
+        return method;
+    }
+
+    private static LivingroomMethod updateAllMethod(EntityClass entityClass) {
+        AsyncMethod method = new AsyncMethod(entityClass, UPDATE_ALL);
+        method.setAnnotation(Update.class);
+        method.addParam(listOf(entityClass), "items");
+        method.setReturnType(TypeName.get(Void.class));
+        method.setPreCode(CodeBlock.builder()
+                .addStatement("$T now = $L", entityClass.getTimestampType(), entityClass.now())
+                .beginControlFlow("for ($T item : items)", entityClass.getTypeName())
+                .addStatement("item.setUpdated_at(now)")
+                .endControlFlow()
+                .build());
+        method.setCacheUpdate("written");
+        return method;
+    }
+
+    private static LivingroomMethod archiveAllMethod(EntityClass entityClass) {
+        AsyncMethod method = new AsyncMethod(entityClass, SOFT_DELETE_ALL);
+        method.setAnnotation(Update.class);
+        method.addParam(listOf(entityClass), "items");
+        method.setReturnType(TypeName.get(Void.class));
+        method.setPreCode(CodeBlock.builder()
+                .addStatement("$T now = $L", entityClass.getTimestampType(), entityClass.now())
+                .beginControlFlow("for ($T item : items)", entityClass.getTypeName())
+                .addStatement("item.setUpdated_at(now)")
                 .addStatement("item.setDeleted($N)", "true")
+                .endControlFlow()
                 .build());
+        method.setCacheUpdate("written");
+        return method;
+    }
+
+    // The non archived items, in the order given by @SelectableAll
+    private static SelectMethod selectAll(EntityClass entityClass, String methodName) {
+        SelectMethod method = new SelectMethod(methodName, "isDeleted = 0", entityClass, null, true);
+        method.setOrder(entityClass.getDefaultOrder(), "");
+        method.setDistinct(entityClass.isDistinctAll());
+        method.setIncremental(entityClass.isIncrementalAll() && methodName.equals(GET_ALL));
+        method.setRefreshInterval(entityClass.getRefreshIntervalAll());
         return method;
     }
 
     private static LivingroomMethod selectAllMethod(EntityClass entityClass) {
-        return selectWhereMethod(entityClass, GET_ALL, "isDeleted = 0", null, true);
+        return selectAll(entityClass, GET_ALL);
+    }
+
+    private static LivingroomMethod selectAllPagedMethod(EntityClass entityClass) {
+        SelectMethod method = selectAll(entityClass, GET_ALL_PAGED);
+        method.setPaged(true);
+        return method;
+    }
+
+    static LivingroomMethod selectAllProjectedMethod(EntityClass entityClass, ClassName projection, List<String> columns) {
+        SelectMethod method = selectAll(entityClass, GET_ALL_PROJECTED);
+        method.setProjection(projection, columns);
+        return method;
+    }
+
+    // Example: SELECT MAX(created_at) FROM Note WHERE isDeleted = 0, returns the boxed type of the column
+    static LivingroomMethod aggregateMethod(EntityClass entityClass, String methodName, Aggregate.Function function,
+                                            String column, String where, String[] params, TypeName columnType) {
+        String from = " FROM " + entityClass.getName() + (where.isEmpty() ? "" : " WHERE " + where);
+        SelectMethod method = new SelectMethod(methodName, where, entityClass, params, false);
+        switch (function) {
+            case COUNT:
+                method.setQuery("SELECT COUNT(" + (column.isEmpty() ? "*" : column) + ")" + from, TypeName.get(Long.class));
+                break;
+            case EXISTS: // Stops at the first matching row
+                method.setQuery("SELECT EXISTS(SELECT 1" + from + ")", TypeName.get(Boolean.class));
+                break;
+            case SUM:
+                boolean real = columnType.box().equals(TypeName.get(Double.class)) || columnType.box().equals(TypeName.get(Float.class));
+                method.setQuery("SELECT SUM(" + column + ")" + from, TypeName.get(real ? Double.class : Long.class));
+                break;
+            case AVG:
+                method.setQuery("SELECT AVG(" + column + ")" + from, TypeName.get(Double.class));
+                break;
+            default: // MIN and MAX
+                method.setQuery("SELECT " + function.name() + "(" + column + ")" + from, columnType.box());
+        }
+        return method;
+    }
+
+    // Keyset pagination: seeks the index from the last item of the previous page instead of skipping rows
+    static List<LivingroomMethod> keyset(EntityClass entityClass, boolean includeArchived) {
+        String filter = includeArchived ? "" : "isDeleted = 0 AND ";
+        List<LivingroomMethod> list = new ArrayList<>();
+
+        SelectMethod pageAfter = new SelectMethod(GET_PAGE_AFTER,
+                filter + "id > :lastId ORDER BY id LIMIT :limit",
+                entityClass, new String[]{"long lastId", "int limit"}, true);
+        pageAfter.setLiveData(false);
+        list.add(pageAfter);
+
+        // The redundant created_at <= :createdAt bounds the index range, the OR only filters the ties
+        SelectMethod pageBefore = new SelectMethod(GET_PAGE_BEFORE,
+                filter + "created_at <= :createdAt AND (created_at < :createdAt OR id < :id)"
+                        + " ORDER BY created_at DESC, id DESC LIMIT :limit",
+                entityClass, new String[]{entityClass.getTimestampType() + " createdAt", "long id", "int limit"}, true);
+        pageBefore.setLiveData(false);
+        list.add(pageBefore);
+
+        if (!includeArchived) entityClass.addIndex("isDeleted", "id");
+        entityClass.addIndex(includeArchived
+                ? new String[]{"created_at", "id"}
+                : new String[]{"isDeleted", "created_at", "id"});
+        return list;
     }
 
     private static LivingroomMethod selectByIdMethod(EntityClass entityClass) {
@@ -114,6 +321,15 @@ abstract class LivingroomMethod {
         return new SelectMethod(methodName, where, entityClass, params, isList);
     }
 
+    static LivingroomMethod selectWhereMethod(EntityClass entityClass, SelectableWhere annotation) {
+        SelectMethod method = new SelectMethod(annotation.methodName(), annotation.where(), entityClass, annotation.params(), true);
+        method.setPaged(annotation.paged());
+        method.setOrder(annotation.orderBy(), annotation.limit());
+        method.setDistinct(annotation.distinctUntilChanged());
+        method.setRefreshInterval(annotation.refreshIntervalMillis());
+        return method;
+    }
+
     static List<LivingroomMethod> crud(EntityClass entityClass) {
         List<LivingroomMethod> list = new ArrayList<>();
         list.add(insertMethod(entityClass));
@@ -122,6 +338,10 @@ abstract class LivingroomMethod {
         list.add(updateMethod(entityClass));
         list.add(selectAllMethod(entityClass));
         list.add(selectByIdMethod(entityClass));
+        list.add(insertAllMethod(entityClass));
+        list.add(deleteAllMethod(entityClass));
+        list.add(archiveAllMethod(entityClass));
+        list.add(updateAllMethod(entityClass));
         return list;
     }
     String getMethodName() {
@@ -186,7 +406,18 @@ abstract class LivingroomMethod {
     }
 
     void addParam(String type, String name) {
-        params.put(name, ClassName.bestGuess(type));
+        params.put(name, PRIMITIVES.containsKey(type) ? PRIMITIVES.get(type) : ClassName.bestGuess(type));
+    }
+
+    // Declared as "type name", for instance "java.util.Date from"
+    void addParams(String[] params) {
+        if (params != null && params.length>=1) {
+            for (String s : params) {
+                String[] a = (s!=null) ? s.split("\\s+"): new String[1];
+                if (a.length != 2) ; // TODO error
+                else this.addParam(a[0], a[1]);
+            }
+        }
     }
 
     void addParam(TypeName type, String name) {
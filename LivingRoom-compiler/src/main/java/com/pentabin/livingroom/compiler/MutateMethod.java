@@ -0,0 +1,102 @@
+package com.pentabin.livingroom.compiler;
+
+import androidx.room.Query;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.Modifier;
+
+
+/**
+ * Updates or deletes the rows matching a where clause in one statement, see @MutableWhere.
+ * The repository returns the number of affected rows in a LivingRoomFuture, completed on the write executor.
+ */
+public class MutateMethod extends LivingroomMethod {
+    private static final String UPDATED_AT = "updated_at";
+    private final String set;
+    private final String where;
+    private final boolean isDelete;
+
+    MutateMethod(EntityClass entityClass, String methodName, String set, String where, String[] params, boolean isDelete) {
+        super(entityClass, methodName);
+        this.set = set;
+        this.where = where;
+        this.isDelete = isDelete;
+        this.setAnnotation(Query.class);
+        this.addParams(params);
+        this.setReturnType(ParameterizedTypeName.get(AsyncMethod.FUTURE_CLASS, TypeName.get(Integer.class)));
+    }
+
+    String getWhere() {
+        return where;
+    }
+
+    // Example: UPDATE Note SET isDeleted = 1, updated_at = :updated_at WHERE created_at < :cutoff
+    private String getQuery() {
+        return (isDelete
+                ? "DELETE FROM " + getEntityClass().getName()
+                : "UPDATE " + getEntityClass().getName() + " SET " + set + ", " + UPDATED_AT + " = :" + UPDATED_AT)
+                + " WHERE " + where;
+    }
+
+    // The dao also takes the new updated_at, after the parameters of the method
+    @Override
+    public MethodSpec.Builder generateDaoMethod() {
+        MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder(this.getMethodName())
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .addAnnotation(AnnotationSpec.builder(this.getAnnotation())
+                        .addMember("value", "$S", getQuery())
+                        .build())
+                .returns(TypeName.INT);
+        getParams().forEach((k, v) -> methodBuilder.addParameter(v, k));
+        if (!isDelete) methodBuilder.addParameter(getEntityClass().getTimestampType(), UPDATED_AT);
+        return methodBuilder;
+    }
+
+    private String getArguments(boolean withUpdatedAt) {
+        List<String> arguments = new ArrayList<>(getParams().keySet());
+        if (withUpdatedAt && !isDelete) arguments.add(UPDATED_AT);
+        return String.join(", ", arguments);
+    }
+
+    // Example: LivingRoomFuture.submit(WRITE_EXECUTOR, () -> { int count = notedao.archiveOlderThan(cutoff, updated_at); entityCache.changed(); return count; })
+    @Override
+    public MethodSpec.Builder generateRepositoryMethod(EntityClass entityClass) {
+        MethodSpec.Builder builder = super.generateMethod();
+        if (!isDelete) builder.addStatement("$T $N = $L", entityClass.getTimestampType(), UPDATED_AT, entityClass.now());
+        CodeBlock daoCall = entityClass.trackedWrite(CodeBlock.of("$N.$N($N)",
+                entityClass.getDaoClassName().toLowerCase(),
+                this.getMethodName(),
+                getArguments(true)));
+        List<String> listeners = entityClass.getWriteListenerFields();
+        CodeBlock write = daoCall;
+        if (!listeners.isEmpty()) { // the changed rows are unknown, the listeners load them again
+            CodeBlock.Builder block = CodeBlock.builder().add("{ int count = $L; ", daoCall);
+            for (String listener: listeners) {
+                block.add("$N.changed(); ", listener);
+            }
+            write = block.add("return count; }").build();
+        }
+        builder.addStatement("return $T.submit($L, () -> $L)",
+                AsyncMethod.FUTURE_CLASS,
+                entityClass.writeExecutor(),
+                write);
+        return builder;
+    }
+
+    @Override
+    public MethodSpec.Builder generateViewModelMethod(EntityClass entityClass) {
+        return super.generateMethod()
+                .addStatement("return $N.$N($N)",
+                        entityClass.getRepositoryClassName().toLowerCase(),
+                        this.getMethodName(),
+                        getArguments(false));
+    }
+}
@@ -0,0 +1,96 @@
+package com.pentabin.livingroom.compiler;
+
+import androidx.room.RawQuery;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.Modifier;
+
+import static com.pentabin.livingroom.compiler.LivingRoomProcessor.READ_EXECUTOR;
+
+/**
+ * The dao, repository and view model methods walking the rows matching a where clause by chunks, see @Streamable.
+ * <p>
+ * iterate(where, args) returns a RowIterator loading the chunks lazily on the calling thread,
+ * forEach(where, args, action) runs it on the read executor and completes with the number of rows.
+ */
+class RowStream {
+    private static final ClassName ROW_ITERATOR_CLASS = ClassName.get("com.pentabin.livingroom", "RowIterator");
+    private static final ClassName QUERY_CLASS = ClassName.get("androidx.sqlite.db", "SupportSQLiteQuery");
+    private static final String LOAD_CHUNK = "loadChunk";
+    private static final String ITERATE = "iterate";
+    private static final String FOR_EACH = "forEach";
+
+    private RowStream() {
+    }
+
+    // The query is built by RowIterator: the where clause is only known at run time. Also read by the export, see EntityExporter
+    static List<MethodSpec> generateDaoMethods(EntityClass entityClass) {
+        List<MethodSpec> methods = new ArrayList<>();
+        methods.add(MethodSpec.methodBuilder(LOAD_CHUNK)
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .addAnnotation(RawQuery.class)
+                .addParameter(QUERY_CLASS, "query")
+                .returns(ParameterizedTypeName.get(ClassName.get(List.class), entityClass.getTypeName()))
+                .build());
+        return methods;
+    }
+
+    private static MethodSpec.Builder iterateMethod(EntityClass entityClass) {
+        return MethodSpec.methodBuilder(ITERATE)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(String.class, "where")
+                .addParameter(ArrayTypeName.of(Object.class), "args")
+                .varargs()
+                .returns(ParameterizedTypeName.get(ROW_ITERATOR_CLASS, entityClass.getTypeName()));
+    }
+
+    private static MethodSpec.Builder forEachMethod(EntityClass entityClass) {
+        return MethodSpec.methodBuilder(FOR_EACH)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(String.class, "where")
+                .addParameter(ArrayTypeName.of(Object.class), "args")
+                .addParameter(ParameterizedTypeName.get(ROW_ITERATOR_CLASS.nestedClass("Action"), entityClass.getTypeName()), "action")
+                .returns(ParameterizedTypeName.get(AsyncMethod.FUTURE_CLASS, TypeName.get(Integer.class)));
+    }
+
+    // Example: new RowIterator<>(500, (afterId, limit) -> notedao.loadChunk(RowIterator.query("Note", where, args, afterId, limit)))
+    static CodeBlock newIterator(EntityClass entityClass, int chunkSize, String where, String args) {
+        return CodeBlock.of("new $T<$T>($L, (afterId, limit) -> $N.$N($T.query($S, $L, $L, afterId, limit)))",
+                ROW_ITERATOR_CLASS, entityClass.getTypeName(), chunkSize,
+                entityClass.getDaoClassName().toLowerCase(), LOAD_CHUNK,
+                ROW_ITERATOR_CLASS, entityClass.getName(), where, args);
+    }
+
+    static List<MethodSpec> generateRepositoryMethods(EntityClass entityClass) {
+        List<MethodSpec> methods = new ArrayList<>();
+        methods.add(iterateMethod(entityClass)
+                .addStatement("return $L", newIterator(entityClass, entityClass.getStreamChunkSize(), "where", "args"))
+                .build());
+        methods.add(forEachMethod(entityClass)
+                .addStatement("return $T.submit($T.$N, () -> $N(where, args).forEach(action))",
+                        AsyncMethod.FUTURE_CLASS, entityClass.getDatabaseClassName(), READ_EXECUTOR, ITERATE)
+                .build());
+        return methods;
+    }
+
+    static List<MethodSpec> generateViewModelMethods(EntityClass entityClass) {
+        String repository = entityClass.getRepositoryClassName().toLowerCase();
+        List<MethodSpec> methods = new ArrayList<>();
+        methods.add(iterateMethod(entityClass)
+                .addStatement("return $N.$N(where, args)", repository, ITERATE)
+                .build());
+        methods.add(forEachMethod(entityClass)
+                .addStatement("return $N.$N(where, args, action)", repository, FOR_EACH)
+                .build());
+        return methods;
+    }
+}
@@ -0,0 +1,129 @@
+package com.pentabin.livingroom.compiler;
+
+import androidx.room.Embedded;
+import androidx.room.RawQuery;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.lang.model.element.Modifier;
+
+/**
+ * Full-text search of the non archived items, see @Searchable.
+ * The query reads the FTS4 index created by the database, unknown to Room, so the dao runs it as a @RawQuery
+ * observing the table of the entity.
+ */
+public class SearchMethod extends LivingroomMethod {
+    static final ClassName FULL_TEXT_INDEX_CLASS = ClassName.get("com.pentabin.livingroom", "FullTextIndex");
+    private static final ClassName LIVE_DATA_CLASS = ClassName.get("androidx.lifecycle", "LiveData");
+    private static final ClassName MUTABLE_LIVE_DATA_CLASS = ClassName.get("androidx.lifecycle", "MutableLiveData");
+    private static final ClassName QUERY_CLASS = ClassName.get("androidx.sqlite.db", "SupportSQLiteQuery");
+    private static final ClassName SIMPLE_QUERY_CLASS = ClassName.get("androidx.sqlite.db", "SimpleSQLiteQuery");
+    private static final String SUFFIX_RESULT = "SearchResult";
+    static final String SUFFIX_SNIPPETS = "Snippets";
+    private static final String TEXT = "text";
+    private final boolean ranked;
+    private final boolean snippets;
+
+    SearchMethod(EntityClass entityClass, String methodName, boolean ranked, boolean snippets) {
+        super(entityClass, methodName);
+        this.ranked = ranked;
+        this.snippets = snippets;
+        this.setAnnotation(RawQuery.class);
+        this.addParam(TypeName.get(String.class), TEXT);
+        this.setReturnType(ParameterizedTypeName.get(LIVE_DATA_CLASS,
+                ParameterizedTypeName.get(ClassName.get(List.class), snippets ? getResultClassName(entityClass) : entityClass.getTypeName())));
+    }
+
+    static ClassName getResultClassName(EntityClass entityClass) {
+        return entityClass.getGeneratedClassName(entityClass.getName() + SUFFIX_RESULT);
+    }
+
+    // Example: SELECT Note.* FROM Note JOIN (SELECT docid, offsets(Note_fts) AS matches FROM Note_fts WHERE Note_fts MATCH ?) AS hits
+    // ON Note.id = hits.docid WHERE Note.isDeleted = 0 ORDER BY length(hits.matches) - length(replace(hits.matches, ' ', '')) DESC
+    private String getQuery() {
+        String table = getEntityClass().getName();
+        String fts = table + "_fts";
+        StringBuilder hits = new StringBuilder("SELECT docid");
+        if (ranked) hits.append(", offsets(").append(fts).append(") AS matches");
+        if (snippets) hits.append(", snippet(").append(fts).append(") AS snippet");
+        hits.append(" FROM ").append(fts).append(" WHERE ").append(fts).append(" MATCH ?");
+        String order = getEntityClass().getDefaultOrder();
+        // offsets() gives 4 numbers per match separated by spaces, the matches are counted without parsing them
+        if (ranked) order = "length(hits.matches) - length(replace(hits.matches, ' ', '')) DESC" + (order.isEmpty() ? "" : ", " + order);
+        return "SELECT " + table + ".*" + (snippets ? ", hits.snippet" : "")
+                + " FROM " + table + " JOIN (" + hits + ") AS hits ON " + table + ".id = hits.docid"
+                + " WHERE " + table + ".isDeleted = 0"
+                + (order.isEmpty() ? "" : " ORDER BY " + order);
+    }
+
+    @Override
+    public MethodSpec.Builder generateDaoMethod() {
+        return MethodSpec.methodBuilder(this.getMethodName())
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .addAnnotation(AnnotationSpec.builder(this.getAnnotation())
+                        .addMember("observedEntities", "$T.class", getEntityClass().getTypeName())
+                        .build())
+                .addParameter(QUERY_CLASS, "query")
+                .returns(this.getReturnType());
+    }
+
+    // Example: String match = FullTextIndex.match(text); if (match == null) return new MutableLiveData<>(Collections.emptyList());
+    @Override
+    public MethodSpec.Builder generateRepositoryMethod(EntityClass entityClass) {
+        return super.generateMethod()
+                .addStatement("$T match = $T.match($N)", String.class, FULL_TEXT_INDEX_CLASS, TEXT)
+                .addStatement("if (match == null) return new $T<>($T.emptyList())", MUTABLE_LIVE_DATA_CLASS, Collections.class)
+                .addStatement("return $N.$N(new $T($S, new Object[]{match}))",
+                        entityClass.getDaoClassName().toLowerCase(),
+                        this.getMethodName(),
+                        SIMPLE_QUERY_CLASS,
+                        getQuery());
+    }
+
+    @Override
+    public MethodSpec.Builder generateViewModelMethod(EntityClass entityClass) {
+        return super.generateMethod()
+                .addStatement("return $N.$N($N)",
+                        entityClass.getRepositoryClassName().toLowerCase(),
+                        this.getMethodName(),
+                        TEXT);
+    }
+
+    // An item with the html excerpt of its matches, as given by the snippet() function of FTS4
+    static TypeSpec generateResultClass(EntityClass entityClass) {
+        TypeName item = entityClass.getTypeName();
+        return TypeSpec.classBuilder(getResultClassName(entityClass))
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addField(FieldSpec.builder(item, "item", Modifier.PRIVATE, Modifier.FINAL)
+                        .addAnnotation(Embedded.class)
+                        .build())
+                .addField(String.class, "snippet", Modifier.PRIVATE, Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(item, "item")
+                        .addParameter(String.class, "snippet")
+                        .addStatement("this.item = item")
+                        .addStatement("this.snippet = snippet")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("getItem")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(item)
+                        .addStatement("return item")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("getSnippet")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(String.class)
+                        .addStatement("return snippet")
+                        .build())
+                .build();
+    }
+}
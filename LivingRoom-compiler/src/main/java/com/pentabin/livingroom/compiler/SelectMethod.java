@@ -5,65 +5,289 @@ import androidx.room.Query;
 import com.squareup.javapoet.AnnotationSpec;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
 
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.lang.model.element.Modifier;
+
+import static com.pentabin.livingroom.compiler.LivingRoomProcessor.READ_EXECUTOR;
 
 public class SelectMethod extends LivingroomMethod {
     private static final String LIST = "List";
     private final String where;
-    private boolean isLiveData; // TODO can either be live or not
+    private boolean isLiveData = true;
     private boolean isList;
+    private boolean isPaged;
+    private ClassName projection;
+    private List<String> columns;
+    private String query;
+    private String orderBy = "";
+    private String limit = "";
+    private boolean isDistinct;
+    private boolean isIncremental;
+    private long refreshInterval;
+    private TypeName valueType;
+
+    private static final ClassName LIVE_DATA_CLASS = ClassName.get("androidx.lifecycle", "LiveData");
+    private static final ClassName PAGED_LIST_CLASS = ClassName.get("androidx.paging", "PagedList");
+    private static final ClassName DATA_SOURCE_FACTORY_CLASS = ClassName.get("androidx.paging", "DataSource", "Factory");
+    private static final ClassName PAGED_LIST_BUILDER_CLASS = ClassName.get("androidx.paging", "LivePagedListBuilder");
+    private static final ClassName DISTINCT_LIVE_DATA_CLASS = ClassName.get("com.pentabin.livingroom", "DistinctLiveData");
+    private static final ClassName INCREMENTAL_LIVE_DATA_CLASS = ClassName.get("com.pentabin.livingroom", "IncrementalListLiveData");
+    private static final ClassName THROTTLED_LIVE_DATA_CLASS = ClassName.get("com.pentabin.livingroom", "ThrottledLiveData");
+    private static final ClassName LIVE_DATA_CACHE_CLASS = ClassName.get("com.pentabin.livingroom", "LiveDataCache");
+    static final String PAGED_LIST_CONFIG = "PAGED_LIST_CONFIG";
+    static final String LIVE_DATA_CACHE = "LIVE_DATA_CACHE";
+    private static final Pattern KEY_LOOKUP = Pattern.compile("\\s*(\\w+)\\s*==?\\s*:(\\w+)\\s*");
 
     SelectMethod(String methodName, String where, EntityClass entityClass, String[] params, boolean isList) {
         super(entityClass, methodName);
         this.isList = isList;
-        //this.isLiveData = isLiveData;
         this.where = where;
         this.setReturnType(getReturnType());
         this.setAnnotation(Query.class);
 
-        if (params != null && params.length>=1) {
-            for (String s : params) {
-                String[] a = (s!=null) ? s.split("\\s+"): new String[1];
-                if (a.length != 2) ; // TODO error
-                else this.addParam(a[0], a[1]);
-            }
-        }
+        this.addParams(params);
+    }
+
+    // The where clause followed by the ORDER BY and LIMIT clauses
+    String getWhere() {
+        return where
+                + (orderBy.isEmpty() ? "" : " ORDER BY " + orderBy)
+                + (limit.isEmpty() ? "" : " LIMIT " + limit);
+    }
+
+    void setOrder(String orderBy, String limit) {
+        this.orderBy = orderBy;
+        this.limit = limit;
+    }
+
+    boolean isPaged() {
+        return isPaged;
+    }
+
+    void setPaged(boolean paged) {
+        this.isPaged = paged && isList;
+        this.setReturnType(getReturnType());
+    }
+
+    // Only the given columns are loaded, into the generated projection class instead of the entity
+    void setProjection(ClassName projection, List<String> columns) {
+        this.projection = projection;
+        this.columns = columns;
+        this.setReturnType(getReturnType());
+    }
+
+    // Aggregates select a single value computed by SQLite instead of rows
+    void setQuery(String query, TypeName valueType) {
+        this.query = query;
+        this.valueType = valueType;
+        this.setReturnType(getReturnType());
+    }
+
+    // Paged lists are diffed by the PagedListAdapter, and futures emit once
+    private boolean isDistinct() {
+        return isDistinct && isLiveData && !isPaged;
+    }
+
+    // The ViewModel skips the emissions equal to the previous one, see DistinctLiveData
+    void setDistinct(boolean distinct) {
+        this.isDistinct = distinct;
+    }
+
+    // The list is refreshed by merging the rows changed since the previous one, see IncrementalListLiveData
+    void setIncremental(boolean incremental) {
+        this.isIncremental = incremental;
+    }
+
+    // Paged lists are loaded page by page by the DataSource, and futures run once
+    private boolean isThrottled() {
+        return refreshInterval > 0 && isLiveData && !isPaged;
+    }
+
+    // The changes of the table are coalesced into one load per interval, see ThrottledLiveData
+    void setRefreshInterval(long refreshIntervalMillis) {
+        this.refreshInterval = refreshIntervalMillis;
+    }
+
+    boolean isLiveData() {
+        return isLiveData;
+    }
+
+    // Non LiveData selects run once on the read executor and return a LivingRoomFuture
+    void setLiveData(boolean liveData) {
+        this.isLiveData = liveData;
+        this.setReturnType(getReturnType());
     }
 
     @Override
     public MethodSpec.Builder generateDaoMethod() {
         MethodSpec.Builder methodBuilder = super.generateDaoMethod();
         methodBuilder.addAnnotation(AnnotationSpec.builder(this.getAnnotation())
-                .addMember("value", "\"SELECT * FROM " + getEntityClass().getName() + " WHERE " + where + "\"")
+                .addMember("value", "$S", query != null ? query
+                        : "SELECT " + (columns == null ? "*" : String.join(", ", columns)) + " FROM " + getEntityClass().getName() + " WHERE " + getWhere())
                 .build());
+        if (isPaged) // Room pages the query through a DataSource, the repository builds the PagedList
+            methodBuilder.returns(ParameterizedTypeName.get(DATA_SOURCE_FACTORY_CLASS,
+                    TypeName.get(Integer.class), getItemType()));
+        else if (!isLiveData || isThrottled()) // run by the repository
+            methodBuilder.returns(getResultType());
 
         return methodBuilder;
     }
 
+    // The LiveData of the calls with the same arguments are shared
+    boolean isCached() {
+        return isLiveData && hasParams();
+    }
+
+    // Lists of entities read by the EntityCache, see @Cached
+    private boolean isEntityList() {
+        return isList && isLiveData && !isPaged && projection == null && valueType == null;
+    }
+
+    // The column and the parameter of a where clause "column = :param" on a key of the memory table, null otherwise.
+    // The keys are compared with equals: an int parameter never matches a long column, SQLite is left to convert it
+    private String[] memoryKey(EntityClass entityClass) {
+        if (!isEntityList() || !orderBy.isEmpty() || !limit.isEmpty()) return null;
+        Matcher matcher = KEY_LOOKUP.matcher(where);
+        if (!matcher.matches() || !entityClass.getMemoryKeys().contains(matcher.group(1))
+                || !getParams().containsKey(matcher.group(2))) return null;
+        // The parameters declared without package, such as "String title", are in java.lang
+        TypeName columnType = TypeName.get(entityClass.getColumns().get(matcher.group(1)).asType()).box();
+        TypeName paramType = getParams().get(matcher.group(2)).box();
+        if (!paramType.equals(columnType) && !("java.lang." + paramType).equals(columnType.toString())) return null;
+        return new String[]{matcher.group(1), matcher.group(2)};
+    }
+
+    // The parameter of getById
+    private String idParam() {
+        return getParams().keySet().iterator().next();
+    }
+
+    boolean isServedFromMemory(EntityClass entityClass) {
+        return isLiveData && entityClass.isInMemory() && memoryTableCall(entityClass) != null;
+    }
+
+    // Example: memoryTable.liveById(id), or null if the select is not served by the memory table
+    private CodeBlock memoryTableCall(EntityClass entityClass) {
+        if (getMethodName().equals(GET_ALL) && entityClass.getDefaultOrder().isEmpty())
+            return CodeBlock.of("$N.all()", EntityClass.MEMORY_TABLE_FIELD);
+        if (getMethodName().equals(GET_BY_ID))
+            return CodeBlock.of("$N.liveById($N)", EntityClass.MEMORY_TABLE_FIELD, idParam());
+        String[] key = memoryKey(entityClass);
+        if (key != null)
+            return CodeBlock.of("$N.liveWhere($S, $N)", EntityClass.MEMORY_TABLE_FIELD, key[0], key[1]);
+        return null;
+    }
+
+    // Example: notedao.getAll() or new LivePagedListBuilder<>(notedao.getAllPaged(), PAGED_LIST_CONFIG)...
+    private CodeBlock daoCall(EntityClass entityClass) {
+        CodeBlock daoCall = CodeBlock.of("$N.$N($N)",
+                entityClass.getDaoClassName().toLowerCase(),
+                this.getMethodName(),
+                getParametersString());
+        if (!isLiveData)
+            return CodeBlock.of("$T.submit($T.$N, () -> $L)",
+                    AsyncMethod.FUTURE_CLASS,
+                    entityClass.getDatabaseClassName(),
+                    READ_EXECUTOR,
+                    daoCall);
+        if (entityClass.isInMemory() && memoryTableCall(entityClass) != null)
+            return memoryTableCall(entityClass);
+        if (isIncremental && isEntityList())
+            daoCall = incrementalCall(entityClass);
+        else if (isThrottled())
+            daoCall = CodeBlock.of("new $T<>($N, $S, $T.$N, $LL, () -> $L)",
+                    THROTTLED_LIVE_DATA_CLASS,
+                    entityClass.getDatabaseClassName().simpleName().toLowerCase(),
+                    entityClass.getName(),
+                    entityClass.getDatabaseClassName(),
+                    READ_EXECUTOR,
+                    refreshInterval,
+                    daoCall);
+        if (entityClass.isTrackingRows() && getMethodName().equals(GET_BY_ID))
+            daoCall = CodeBlock.of("$N.get($N)", EntityClass.ROW_TRACKER_FIELD, idParam());
+        if (entityClass.isCached() && getMethodName().equals(GET_BY_ID))
+            return CodeBlock.of("$N.cachedFirst($N, () -> $L)", EntityClass.CACHE_FIELD, idParam(), daoCall);
+        if (entityClass.isCached() && isEntityList())
+            return CodeBlock.of("$N.tracked($L)", EntityClass.CACHE_FIELD, daoCall);
+        if (!isPaged) return daoCall;
+        return CodeBlock.of("new $T<>($L, $N).setFetchExecutor($T.$N).build()",
+                PAGED_LIST_BUILDER_CLASS,
+                daoCall,
+                PAGED_LIST_CONFIG,
+                entityClass.getDatabaseClassName(),
+                READ_EXECUTOR);
+    }
+
+    // Example: new IncrementalListLiveData<Note>(db, "Note", READ_EXECUTOR, 0L) { loadAll() { return notedao.loadAllRows(); } ... }
+    private CodeBlock incrementalCall(EntityClass entityClass) {
+        String dao = entityClass.getDaoClassName().toLowerCase();
+        TypeName rows = getResultType();
+        TypeSpec liveData = TypeSpec.anonymousClassBuilder("$N, $S, $T.$N, $LL",
+                entityClass.getDatabaseClassName().simpleName().toLowerCase(),
+                entityClass.getName(),
+                entityClass.getDatabaseClassName(),
+                READ_EXECUTOR,
+                refreshInterval)
+                .superclass(ParameterizedTypeName.get(INCREMENTAL_LIVE_DATA_CLASS, getItemType()))
+                .addMethod(MethodSpec.methodBuilder("loadAll")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PROTECTED)
+                        .returns(rows)
+                        .addStatement("return $N.$N()", dao, EntityClass.LOAD_ALL_ROWS)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("loadChangedSince")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PROTECTED)
+                        .addParameter(TypeName.LONG, "since")
+                        .returns(rows)
+                        .addStatement("return $N.$N(since)", dao, EntityClass.LOAD_ROWS_CHANGED_SINCE)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("loadStamps")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PROTECTED)
+                        .returns(ParameterizedTypeName.get(ClassName.get(List.class), EntityClass.STAMP_CLASS))
+                        .addStatement("return $N.$N()", dao, EntityClass.LOAD_ROW_STAMPS)
+                        .build())
+                .build();
+        return CodeBlock.of("$L", liveData);
+    }
+
     @Override
     public MethodSpec.Builder generateRepositoryMethod(EntityClass entityClass) {
         MethodSpec.Builder builder = super.generateMethod();
         CodeBlock.Builder innerCode = CodeBlock.builder();
         if (!this.hasParams()) {
             innerCode = innerCode.beginControlFlow("if ($N == null)", this.getMethodName() + LIST)
-                    .addStatement("$N = $N.$N($N)", this.getMethodName() + LIST,
-                            entityClass.getDaoClassName().toLowerCase(),
-                            this.getMethodName(),
-                            getParametersString())
+                    .addStatement("$N = $L", this.getMethodName() + LIST,
+                            daoCall(entityClass))
                     .endControlFlow()
                     .addStatement("return $N", this.getMethodName() + LIST);
         }
-        else {
+        else if (isCached()) {
             innerCode = innerCode
-                    .addStatement("return $N.$N($N)",
-                            entityClass.getDaoClassName().toLowerCase(),
+                    .addStatement("return $N.get($T.asList($S, $N), () -> $L)",
+                            LIVE_DATA_CACHE,
+                            Arrays.class,
                             this.getMethodName(),
-                            getParametersString());
+                            getParametersString(),
+                            daoCall(entityClass));
+        }
+        else {
+            innerCode = innerCode
+                    .addStatement("return $L", daoCall(entityClass));
         }
         builder.addCode(innerCode.build());
         return builder;
@@ -74,32 +298,70 @@ public class SelectMethod extends LivingroomMethod {
     public MethodSpec.Builder generateViewModelMethod(EntityClass entityClass){
         MethodSpec.Builder builder = super.generateMethod();
         CodeBlock.Builder innerCode = CodeBlock.builder();
+        CodeBlock repositoryCall = CodeBlock.of("$N.$N($N)",
+                entityClass.getRepositoryClassName().toLowerCase(),
+                this.getMethodName(),
+                getParametersString());
+        if (isDistinct())
+            repositoryCall = CodeBlock.of("new $T<>($L, $T.$N)",
+                    DISTINCT_LIVE_DATA_CLASS,
+                    repositoryCall,
+                    entityClass.getDatabaseClassName(),
+                    READ_EXECUTOR);
         if (!this.hasParams()) {
             innerCode = innerCode.beginControlFlow("if ($N == null)", this.getMethodName() + LIST)
-                    .addStatement("$N = $N.$N()", this.getMethodName() + LIST,
-                            entityClass.getRepositoryClassName().toLowerCase(),
-                            this.getMethodName())
+                    .addStatement("$N = $L", this.getMethodName() + LIST, repositoryCall)
                     .endControlFlow()
                     .addStatement("return $N", this.getMethodName() + LIST);
         }
         else {
             innerCode = innerCode
-                    .addStatement("return $N.$N($N)",
-                            entityClass.getRepositoryClassName().toLowerCase(),
-                            this.getMethodName(),
-                            getParametersString());
+                    .addStatement("return $L", repositoryCall);
         }
         builder.addCode(innerCode.build());
 
         return builder;
     }
 
-    ParameterizedTypeName getReturnType(){
-        ClassName liveDataClass = ClassName.get("androidx.lifecycle", "LiveData");
+    // Entity or its projection
+    private TypeName getItemType() {
+        return projection != null ? projection : getEntityClass().getTypeName();
+    }
+
+    // List<Entity> or Entity
+    private TypeName getResultType() {
+        if (valueType != null) return valueType;
         ClassName listClass = ClassName.get("java.util", LIST);
-        return isList?
-                ParameterizedTypeName.get(liveDataClass, ParameterizedTypeName.get(listClass, getEntityClass().getTypeName()))
-                : ParameterizedTypeName.get(liveDataClass,getEntityClass().getTypeName());
+        return isList ?
+                ParameterizedTypeName.get(listClass, getItemType())
+                : getItemType();
+    }
+
+    ParameterizedTypeName getReturnType(){
+        if (isPaged)
+            return ParameterizedTypeName.get(LIVE_DATA_CLASS, ParameterizedTypeName.get(PAGED_LIST_CLASS, getItemType()));
+        return ParameterizedTypeName.get(isLiveData ? LIVE_DATA_CLASS : AsyncMethod.FUTURE_CLASS, getResultType());
+    }
+
+    // Shared by all the repository instances, so that every screen reuses the same queries
+    static FieldSpec liveDataCacheField(EntityClass entityClass) {
+        return FieldSpec.builder(LIVE_DATA_CACHE_CLASS, LIVE_DATA_CACHE, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new $T($T.$N)",
+                        LIVE_DATA_CACHE_CLASS,
+                        entityClass.getDatabaseClassName(),
+                        LivingRoomProcessor.LIVE_DATA_CACHE_SIZE)
+                .build();
+    }
+
+    // Example: new PagedList.Config.Builder().setPageSize(20).setPrefetchDistance(20).build()
+    static FieldSpec pagedListConfigField(EntityClass entityClass) {
+        ClassName configClass = PAGED_LIST_CLASS.nestedClass("Config");
+        return FieldSpec.builder(configClass, PAGED_LIST_CONFIG, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new $T.Builder().setPageSize($L).setPrefetchDistance($L).setEnablePlaceholders(false).build()",
+                        configClass,
+                        entityClass.getPageSize(),
+                        entityClass.getPrefetchDistance())
+                .build();
     }
 
     private String getParametersString(){
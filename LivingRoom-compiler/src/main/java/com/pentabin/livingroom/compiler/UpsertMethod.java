@@ -0,0 +1,157 @@
+package com.pentabin.livingroom.compiler;
+
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.VariableElement;
+
+/**
+ * upsert and upsertAll: each item is inserted, or else its row is updated, in one transaction.
+ * <p>
+ * SQLite supports INSERT ... ON CONFLICT DO UPDATE from 3.24, shipped with API 30 only, so the row is
+ * inserted with INSERT OR IGNORE then updated by key when the insert was ignored.
+ */
+class UpsertMethod extends AsyncMethod {
+    private static final String UPSERT_ROW = "upsertRow";
+    private static final String UPSERT_ROWS = "upsertRows";
+    private static final String INSERT_OR_IGNORE = "upsertInsert";
+    private static final String UPDATE_BY_KEY = "upsertUpdate";
+    private static final String ID_OF_KEY = "upsertId";
+    private static final String CREATED_AT_OF_KEY = "upsertCreatedAt";
+
+    UpsertMethod(EntityClass entityClass, String methodName) {
+        super(entityClass, methodName);
+    }
+
+    // The dao methods are shared by upsert and upsertAll, see generateDaoMethods
+    @Override
+    public MethodSpec.Builder generateDaoMethod() {
+        return null;
+    }
+
+    // Example: livingroomdatabase.runInTransaction(() -> upsertRow(item))
+    @Override
+    CodeBlock daoCall(EntityClass entityClass) {
+        return entityClass.inTransaction(CodeBlock.of("() -> $N($N)",
+                getParams().containsValue(entityClass.getTypeName()) ? UPSERT_ROW : UPSERT_ROWS,
+                paramName()));
+    }
+
+    // The updated columns: all of them but id, created_at and the key
+    private static List<String> updatedColumns(EntityClass entityClass) {
+        List<String> columns = new ArrayList<>(entityClass.getColumns().keySet());
+        columns.remove("id");
+        columns.remove("created_at");
+        columns.remove(entityClass.getUpsertKey());
+        return columns;
+    }
+
+    private static String fieldOf(EntityClass entityClass, String column) {
+        return entityClass.getColumns().get(column).getSimpleName().toString();
+    }
+
+    // Example: @Query("UPDATE Note SET title = :title, ... WHERE id = :id") int upsertUpdate(String title, ..., long id)
+    static List<MethodSpec> generateDaoMethods(EntityClass entityClass) {
+        Map<String, VariableElement> fields = entityClass.getColumns();
+        String key = entityClass.getUpsertKey();
+        List<MethodSpec> methods = new ArrayList<>();
+        methods.add(MethodSpec.methodBuilder(INSERT_OR_IGNORE)
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .addAnnotation(AnnotationSpec.builder(Insert.class)
+                        .addMember("onConflict", "$T.IGNORE", OnConflictStrategy.class)
+                        .build())
+                .addParameter(entityClass.getTypeName(), "item")
+                .returns(TypeName.LONG)
+                .build());
+
+        List<String> assignments = new ArrayList<>();
+        MethodSpec.Builder update = MethodSpec.methodBuilder(UPDATE_BY_KEY)
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .returns(TypeName.INT);
+        for (String column: updatedColumns(entityClass)) {
+            assignments.add(column + " = :" + fieldOf(entityClass, column));
+            update.addParameter(TypeName.get(fields.get(column).asType()), fieldOf(entityClass, column));
+        }
+        update.addParameter(TypeName.get(fields.get(key).asType()), fieldOf(entityClass, key));
+        methods.add(update.addAnnotation(AnnotationSpec.builder(Query.class)
+                        .addMember("value", "$S", "UPDATE " + entityClass.getName()
+                                + " SET " + String.join(", ", assignments)
+                                + " WHERE " + key + " = :" + fieldOf(entityClass, key))
+                        .build())
+                .build());
+
+        methods.add(MethodSpec.methodBuilder(CREATED_AT_OF_KEY)
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .addAnnotation(AnnotationSpec.builder(Query.class)
+                        .addMember("value", "$S", "SELECT created_at FROM " + entityClass.getName()
+                                + " WHERE " + key + " = :" + fieldOf(entityClass, key))
+                        .build())
+                .addParameter(TypeName.get(fields.get(key).asType()), fieldOf(entityClass, key))
+                .returns(entityClass.getTimestampType())
+                .build());
+        if (!key.equals("id")) {
+            methods.add(MethodSpec.methodBuilder(ID_OF_KEY)
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .addAnnotation(AnnotationSpec.builder(Query.class)
+                            .addMember("value", "$S", "SELECT id FROM " + entityClass.getName()
+                                    + " WHERE " + key + " = :" + fieldOf(entityClass, key))
+                            .build())
+                    .addParameter(TypeName.get(fields.get(key).asType()), fieldOf(entityClass, key))
+                    .returns(TypeName.LONG)
+                    .build());
+        }
+        return methods;
+    }
+
+    // Called in the transaction, returns the id of the row, -1 if the insert was ignored because of another constraint.
+    // An updated row keeps its created_at, read back so that the listeners get the row as stored
+    static List<MethodSpec> generateRepositoryMethods(EntityClass entityClass) {
+        String dao = entityClass.getDaoClassName().toLowerCase();
+        String key = entityClass.getUpsertKey();
+        List<CodeBlock> values = new ArrayList<>();
+        for (String column: updatedColumns(entityClass)) {
+            values.add(CodeBlock.of("item.$N()", entityClass.getterOf(column)));
+        }
+        values.add(CodeBlock.of("item.$N()", entityClass.getterOf(key)));
+
+        List<MethodSpec> methods = new ArrayList<>();
+        methods.add(MethodSpec.methodBuilder(UPSERT_ROW)
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(entityClass.getTypeName(), "item")
+                .returns(TypeName.LONG)
+                .addStatement("$T createdAt = item.getCreated_at()", entityClass.getTimestampType())
+                .addStatement("item.setCreated_at(item.getUpdated_at())")
+                .addStatement("long id = $N.$N(item)", dao, INSERT_OR_IGNORE)
+                .addStatement("if (id != -1) return id")
+                .addStatement("item.setCreated_at(createdAt)")
+                .addStatement("if ($N.$N($L) == 0) return -1", dao, UPDATE_BY_KEY, CodeBlock.join(values, ", "))
+                .addStatement("item.setCreated_at($N.$N(item.$N()))", dao, CREATED_AT_OF_KEY, entityClass.getterOf(key))
+                .addStatement(key.equals("id") ? "return item.getId()" : "return $N.$N(item.$N())",
+                        key.equals("id") ? new Object[0] : new Object[]{dao, ID_OF_KEY, entityClass.getterOf(key)})
+                .build());
+        methods.add(MethodSpec.methodBuilder(UPSERT_ROWS)
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(List.class), entityClass.getTypeName()), "items")
+                .returns(long[].class)
+                .addStatement("long[] ids = new long[items.size()]")
+                .beginControlFlow("for (int i = 0; i < ids.length; i++)")
+                .addStatement("ids[i] = $N(items.get(i))", UPSERT_ROW)
+                .endControlFlow()
+                .addStatement("return ids")
+                .build());
+        return methods;
+    }
+}
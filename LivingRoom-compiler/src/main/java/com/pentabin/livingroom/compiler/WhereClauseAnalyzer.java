@@ -0,0 +1,121 @@
+package com.pentabin.livingroom.compiler;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the index that would serve a where clause:
+ * the columns compared with = or IN first, then the first column compared with a range operator,
+ * or the ORDER BY columns when there is no range.
+ * <p>
+ * Only the top level AND terms are considered, a term containing an OR can't use a single index.
+ */
+class WhereClauseAnalyzer {
+    private static final Pattern STRING_LITERAL = Pattern.compile("'[^']*'");
+    private static final Pattern TAIL = Pattern.compile("\\b(ORDER\\s+BY|GROUP\\s+BY|LIMIT)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ORDER_BY = Pattern.compile("\\bORDER\\s+BY\\s+(.*?)(\\s+LIMIT\\b.*)?$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern AND = Pattern.compile("\\bAND\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern OR = Pattern.compile("\\bOR\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern BETWEEN = Pattern.compile("\\bBETWEEN\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern EQUALITY = Pattern.compile("^\\(*\\s*(\\w+)\\s*(==|=|IS\\s+(?!NOT\\b)|IN\\b)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern RANGE = Pattern.compile("^\\(*\\s*(\\w+)\\s*(<=|>=|<|>|BETWEEN\\b)", Pattern.CASE_INSENSITIVE);
+
+    private final List<String> equalityColumns = new ArrayList<>();
+    private final List<String> orderedColumns = new ArrayList<>();
+
+    /**
+     * @param where the where clause, possibly followed by ORDER BY and LIMIT
+     * @param columns the columns of the entity, other identifiers are ignored
+     */
+    WhereClauseAnalyzer(String where, Set<String> columns) {
+        String clause = STRING_LITERAL.matcher(where).replaceAll("?");
+        String orderBy = "";
+        Matcher orderByMatcher = ORDER_BY.matcher(clause);
+        if (orderByMatcher.find()) orderBy = orderByMatcher.group(1);
+        Matcher tail = TAIL.matcher(clause);
+        if (tail.find()) clause = clause.substring(0, tail.start());
+
+        List<String> terms = splitTopLevel(clause);
+        if (terms == null) return;
+
+        String range = null;
+        for (String term : terms) {
+            if (OR.matcher(term).find()) continue;
+            Matcher equality = EQUALITY.matcher(term.trim());
+            Matcher rangeMatcher = RANGE.matcher(term.trim());
+            if (equality.find() && columns.contains(equality.group(1))) {
+                if (!equalityColumns.contains(equality.group(1))) equalityColumns.add(equality.group(1));
+            } else if (range == null && rangeMatcher.find() && columns.contains(rangeMatcher.group(1))) {
+                range = rangeMatcher.group(1);
+            }
+        }
+
+        if (range != null && !equalityColumns.contains(range)) {
+            orderedColumns.add(range);
+        } else if (range == null) {
+            for (String order : orderBy.split(",")) {
+                String column = order.trim().split("\\s+")[0];
+                if (!columns.contains(column)) break;
+                if (!equalityColumns.contains(column) && !orderedColumns.contains(column)) orderedColumns.add(column);
+            }
+        }
+    }
+
+    // The AND terms at depth 0, null when the clause is a top level OR
+    private static List<String> splitTopLevel(String clause) {
+        List<String> terms = new ArrayList<>();
+        StringBuilder depthZero = new StringBuilder();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < clause.length(); i++) {
+            char c = clause.charAt(i);
+            if (c == '(') depth++;
+            else if (c == ')') depth--;
+            depthZero.append(depth == 0 ? c : ' ');
+        }
+        String flat = depthZero.toString();
+        if (OR.matcher(flat).find()) return null;
+
+        Matcher and = AND.matcher(flat);
+        while (and.find()) {
+            String term = clause.substring(start, and.start());
+            // the AND of x BETWEEN a AND b doesn't split the clause
+            if (BETWEEN.matcher(term).find() && !AND.matcher(term).find()) continue;
+            terms.add(term);
+            start = and.end();
+        }
+        terms.add(clause.substring(start));
+        return terms;
+    }
+
+    boolean isEmpty() {
+        return equalityColumns.isEmpty() && orderedColumns.isEmpty();
+    }
+
+    List<String> getColumns() {
+        List<String> columns = new ArrayList<>(equalityColumns);
+        columns.addAll(orderedColumns);
+        return columns;
+    }
+
+    /**
+     * @param index the columns of an existing index
+     * @return true if the index starts with the equality columns, in any order, followed by the ordered columns
+     */
+    boolean isCoveredBy(List<String> index) {
+        List<String> columns = getColumns();
+        if (index.size() < columns.size()) return false;
+        Set<String> prefix = new HashSet<>(index.subList(0, equalityColumns.size()));
+        return prefix.equals(new HashSet<>(equalityColumns))
+                && index.subList(equalityColumns.size(), columns.size()).equals(orderedColumns);
+    }
+
+    // Lookups and ranges on the primary key are served by the rowid
+    boolean isServedByPrimaryKey() {
+        return equalityColumns.contains("id") || (!isEmpty() && getColumns().get(0).equals("id"));
+    }
+}
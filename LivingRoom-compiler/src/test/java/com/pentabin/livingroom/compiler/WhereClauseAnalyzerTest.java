@@ -0,0 +1,89 @@
+package com.pentabin.livingroom.compiler;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class WhereClauseAnalyzerTest {
+    private static final Set<String> COLUMNS = new HashSet<>(Arrays.asList(
+            "id", "title", "content", "priority", "created_at", "updated_at", "isDeleted"));
+
+    // where clause, expected index columns
+    private static final Object[][] INDEX_COLUMNS = {
+            {"title = :title", Collections.singletonList("title")},
+            {"title == :title", Collections.singletonList("title")},
+            {"title IS NULL", Collections.singletonList("title")},
+            {"title IS NOT NULL", Collections.emptyList()},
+            {"priority IN (:priorities)", Collections.singletonList("priority")},
+            {"created_at > :from", Collections.singletonList("created_at")},
+            // AND: the equality columns first, then a single range
+            {"title = :title AND created_at > :from", Arrays.asList("title", "created_at")},
+            {"created_at > :from AND title = :title", Arrays.asList("title", "created_at")},
+            {"created_at > :from AND updated_at < :to", Collections.singletonList("created_at")},
+            {"created_at BETWEEN :from AND :to AND title = :title", Arrays.asList("title", "created_at")},
+            {"title = :title and priority = :priority", Arrays.asList("title", "priority")},
+            // OR: a top level OR can't use a single index, a nested one only drops its term
+            {"title = :title OR content = :content", Collections.emptyList()},
+            {"(title = :title OR content = :content) AND priority = :priority", Collections.singletonList("priority")},
+            // parentheses
+            {"(title = :title)", Collections.singletonList("title")},
+            {"((title = :title)) AND (created_at < :to)", Arrays.asList("title", "created_at")},
+            // ORDER BY and LIMIT tails
+            {"title = :title ORDER BY created_at DESC", Arrays.asList("title", "created_at")},
+            {"title = :title ORDER BY created_at DESC, priority LIMIT 10", Arrays.asList("title", "created_at", "priority")},
+            {"title = :title LIMIT 10", Collections.singletonList("title")},
+            {"created_at > :from ORDER BY priority", Collections.singletonList("created_at")},
+            {"1 ORDER BY created_at", Collections.singletonList("created_at")},
+            {"title = :title ORDER BY length(content)", Collections.singletonList("title")},
+            // quoted literals
+            {"title = 'a AND b' AND priority = :priority", Arrays.asList("title", "priority")},
+            {"title = 'x OR y'", Collections.singletonList("title")},
+            {"content = 'ORDER BY created_at'", Collections.singletonList("content")},
+            // unknown identifiers are ignored
+            {"unknown = :value AND title = :title", Collections.singletonList("title")},
+    };
+
+    // where clause, served by the primary key
+    private static final Object[][] PRIMARY_KEY = {
+            {"id = :id", true},
+            {"title = :title AND id = :id", true},
+            {"id > :after ORDER BY id LIMIT 100", true},
+            {"id IN (:ids)", true},
+            {"title = :title", false},
+            {"title = :title ORDER BY id", false},
+            {"valid = :id", false},
+    };
+
+    @Test
+    public void indexColumns() {
+        for (Object[] row : INDEX_COLUMNS) {
+            WhereClauseAnalyzer analyzer = new WhereClauseAnalyzer((String) row[0], COLUMNS);
+            assertEquals((String) row[0], row[1], analyzer.getColumns());
+            assertEquals((String) row[0], ((List<?>) row[1]).isEmpty(), analyzer.isEmpty());
+        }
+    }
+
+    @Test
+    public void primaryKey() {
+        for (Object[] row : PRIMARY_KEY) {
+            assertEquals((String) row[0], row[1], new WhereClauseAnalyzer((String) row[0], COLUMNS).isServedByPrimaryKey());
+        }
+    }
+
+    @Test
+    public void coveredBy() {
+        WhereClauseAnalyzer analyzer = new WhereClauseAnalyzer(
+                "priority = :priority AND title = :title ORDER BY created_at", COLUMNS);
+        assertTrue(analyzer.isCoveredBy(Arrays.asList("title", "priority", "created_at")));
+        assertTrue(analyzer.isCoveredBy(Arrays.asList("priority", "title", "created_at", "content")));
+        assertFalse(analyzer.isCoveredBy(Arrays.asList("title", "priority")));
+        assertFalse(analyzer.isCoveredBy(Arrays.asList("created_at", "title", "priority")));
+        assertFalse(analyzer.isCoveredBy(Arrays.asList("title", "created_at", "priority")));
+    }
+}
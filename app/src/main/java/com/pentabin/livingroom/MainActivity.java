@@ -9,8 +9,6 @@ import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.Collections;
-
 public class MainActivity extends AppCompatActivity {
     private NoteViewModel viewModel;
     private EditText title;
@@ -25,9 +23,7 @@ public class MainActivity extends AppCompatActivity {
         initViews();
         viewModel = new ViewModelProvider(this).get(NoteViewModel.class);
         viewModel.getAll().observe(this, notes -> {
-            Collections.reverse(notes);
-            notesAdapter.setNoteList(notes);
-            notesAdapter.notifyDataSetChanged();
+            notesAdapter.submitList(notes);
         });
     }
 
@@ -45,7 +41,7 @@ public class MainActivity extends AppCompatActivity {
         String c = content.getText().toString();
         if (!t.isEmpty()) {
             Note note = new Note(t, c);
-            viewModel.insert(note);
+            viewModel.insertAsync(note);
             title.setText("");
             content.setText("");
         }
@@ -1,16 +1,21 @@
 package com.pentabin.livingroom;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 
 import com.pentabin.livingroom.annotations.Crudable;
+import com.pentabin.livingroom.annotations.Diffable;
+import com.pentabin.livingroom.annotations.SelectableAll;
 import com.pentabin.livingroom.annotations.SelectableWhere;
 
 @Crudable
+@Diffable(fields = {"title", "content"})
+@SelectableAll(orderBy = "created_at DESC", distinctUntilChanged = true)
 @SelectableWhere(methodName = "getArchived", where = "isDeleted = 1")
 @SelectableWhere(methodName = "getDateRange",
         where = "created_at > :from AND created_at < :to",
         params = {"java.util.Date from", "java.util.Date to"})
-@Entity
+@Entity(indices = @Index("created_at"))
 public class Note extends BasicEntity {
     private String title;
     private String content;
@@ -4,7 +4,7 @@ import androidx.room.PrimaryKey;
 
 import java.util.Date;
 
-public abstract class BasicEntity {
+public abstract class BasicEntity implements LivingEntity {
     @PrimaryKey(autoGenerate = true)
     private long id;
     private Date created_at;
@@ -43,4 +43,10 @@ public abstract class BasicEntity {
         isDeleted = deleted;
     }
 
+    @Override
+    public long getLastModifiedMillis() {
+        Date date = updated_at != null ? updated_at : created_at;
+        return date != null ? date.getTime() : 0;
+    }
+
 }
@@ -0,0 +1,66 @@
+package com.pentabin.livingroom;
+
+import androidx.room.PrimaryKey;
+
+import java.util.Date;
+
+/**
+ * Variant of {@link BasicEntity} storing created_at and updated_at as primitive epoch millis,
+ * so that loading and writing rows neither allocates Date objects nor goes through the DateConverter.
+ * <p>
+ * The columns have the same names as in BasicEntity. A timestamp that was never set is 0 instead of null.
+ * The Date getters are views created on each call.
+ */
+public abstract class BasicMillisEntity implements LivingEntity {
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+    private long created_at;
+    private long updated_at;
+    private boolean isDeleted;
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getCreated_at() {
+        return created_at;
+    }
+
+    public void setCreated_at(long created_at) {
+        this.created_at = created_at;
+    }
+
+    public long getUpdated_at() {
+        return updated_at;
+    }
+
+    public void setUpdated_at(long updated_at) {
+        this.updated_at = updated_at;
+    }
+
+    public boolean isDeleted() {
+        return isDeleted;
+    }
+
+    public void setDeleted(boolean deleted) {
+        isDeleted = deleted;
+    }
+
+    public Date getCreatedDate() {
+        return created_at != 0 ? new Date(created_at) : null;
+    }
+
+    public Date getUpdatedDate() {
+        return updated_at != 0 ? new Date(updated_at) : null;
+    }
+
+    @Override
+    public long getLastModifiedMillis() {
+        return updated_at != 0 ? updated_at : created_at;
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.pentabin.livingroom;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.Observer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Emits the values of a source LiveData only when they changed since the last emitted one.
+ * <p>
+ * The LivingEntity items are compared by id and updated_at (created_at if never updated),
+ * the other values with equals. The comparison runs on the given executor, not on the main thread.
+ */
+public class DistinctLiveData<T> extends MediatorLiveData<T> {
+    private static final Object NONE = new Object();
+
+    private final Executor executor;
+    private long version;
+    private Object lastSignature = NONE;
+
+    public DistinctLiveData(LiveData<T> source, Executor executor) {
+        this.executor = executor;
+        addSource(source, new Observer<T>() {
+            @Override
+            public void onChanged(T value) {
+                compare(value);
+            }
+        });
+    }
+
+    private void compare(final T value) {
+        final long current;
+        synchronized (this) {
+            current = ++version;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Object signature = signature(value);
+                synchronized (DistinctLiveData.this) {
+                    // A newer value is being compared, this one is already outdated
+                    if (current != version) return;
+                    if (lastSignature != NONE && equal(lastSignature, signature)) return;
+                    lastSignature = signature;
+                    postValue(value);
+                }
+            }
+        });
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static Object signature(Object value) {
+        if (value instanceof List) {
+            List<?> items = (List<?>) value;
+            List<Object> signature = new ArrayList<>(items.size() * 2);
+            for (Object item : items) {
+                if (item instanceof LivingEntity) {
+                    signature.add(((LivingEntity) item).getId());
+                    signature.add(((LivingEntity) item).getLastModifiedMillis());
+                } else {
+                    signature.add(item);
+                }
+            }
+            return signature;
+        }
+        if (value instanceof LivingEntity) {
+            List<Object> signature = new ArrayList<>(2);
+            signature.add(((LivingEntity) value).getId());
+            signature.add(((LivingEntity) value).getLastModifiedMillis());
+            return signature;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,254 @@
+package com.pentabin.livingroom;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.Observer;
+import androidx.room.InvalidationTracker;
+import androidx.room.RoomDatabase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * In memory identity map of the items of an entity, keyed by id, used by the repositories of the entities marked @Cached.
+ * <p>
+ * It is filled by the list selects and by the writes of the repository. getById serves a cached item without query,
+ * then follows the writes of the repository, until the table is changed elsewhere: it then observes its source.
+ * The invalidations that follow the writes of the repository keep the cache, see {@link #write(Callable)};
+ * the other ones come from another connection, process or database instance, and clear it. An invalidation that
+ * follows both a write of the repository and a change made elsewhere clears it too, see {@link LocalWrites}.
+ */
+public class EntityCache<T extends LivingEntity> {
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private final int maxEntries;
+    private final LinkedHashMap<Long, T> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LocalWrites localWrites;
+    // The active getById LiveData served from the cache, by id
+    private final Map<Long, Set<Item>> served = new HashMap<>();
+
+    /**
+     * @param executor the observer of the table is added off the main thread, since it may open the database
+     */
+    public EntityCache(final RoomDatabase database, String tableName, Executor executor, int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.localWrites = new LocalWrites(database);
+        final InvalidationTracker.Observer observer = new InvalidationTracker.Observer(tableName) {
+            @Override
+            public void onInvalidated(Set<String> tables) {
+                invalidate(tables);
+            }
+        };
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                database.getInvalidationTracker().addObserver(observer);
+            }
+        });
+    }
+
+    public synchronized T get(long id) {
+        return entries.get(id);
+    }
+
+    private synchronized void put(T item) {
+        entries.put(item.getId(), item);
+        if (entries.size() > maxEntries) {
+            Iterator<Long> eldest = entries.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private synchronized void remove(long id) {
+        entries.remove(id);
+    }
+
+    private void invalidate(Set<String> tables) {
+        if (localWrites.isLocal(tables)) return;
+        clear();
+    }
+
+    // The served LiveData observe their source from now on, the source is added on the main thread
+    private synchronized void clear() {
+        entries.clear();
+        final List<Item> items = new ArrayList<>();
+        for (Set<Item> rows : served.values()) {
+            items.addAll(rows);
+        }
+        served.clear();
+        if (items.isEmpty()) return;
+        MAIN_HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Item item : items) {
+                    item.attach();
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs a write of the repository in a transaction, see {@link LocalWrites}
+     */
+    public <V> V write(Callable<V> write) {
+        return localWrites.write(write);
+    }
+
+    public void write(Runnable write) {
+        localWrites.write(write);
+    }
+
+    // Called after the writes of the repository, once the dao returns
+
+    private synchronized void pushed(long id, T item) {
+        Set<Item> items = served.get(id);
+        if (items == null) return;
+        for (Item liveData : items) {
+            liveData.postValue(item);
+        }
+    }
+
+    public Long inserted(T item, Long id) {
+        if (id != null && id > 0) {
+            item.setId(id);
+            written(item);
+        }
+        return id;
+    }
+
+    public long[] inserted(List<T> items, long[] ids) {
+        for (int i = 0; i < ids.length && i < items.size(); i++) {
+            inserted(items.get(i), ids[i]);
+        }
+        return ids;
+    }
+
+    public void written(T item) {
+        put(item);
+        pushed(item.getId(), item);
+    }
+
+    public void written(List<T> items) {
+        for (T item : items) {
+            written(item);
+        }
+    }
+
+    public void removed(T item) {
+        remove(item.getId());
+        pushed(item.getId(), null);
+    }
+
+    public void removed(List<T> items) {
+        for (T item : items) {
+            removed(item);
+        }
+    }
+
+    /**
+     * Called after a statement that changed rows unknown to the repository, such as a @MutableWhere
+     */
+    public void changed() {
+        clear();
+    }
+
+    /**
+     * @return the item LiveData, that emits the cached item without query, or the items loaded by the source
+     * when the item is not cached
+     */
+    public LiveData<T> cachedFirst(long id, LiveDataCache.Factory<T> source) {
+        return new Item(id, source);
+    }
+
+    // The cached item if any, then followed by the writes of the repository
+    private synchronized T serve(Item item) {
+        T cached = entries.get(item.id);
+        if (cached == null) return null;
+        Set<Item> items = served.get(item.id);
+        if (items == null) {
+            items = new HashSet<>();
+            served.put(item.id, items);
+        }
+        items.add(item);
+        return cached;
+    }
+
+    private synchronized void unserve(Item item) {
+        Set<Item> items = served.get(item.id);
+        if (items == null) return;
+        items.remove(item);
+        if (items.isEmpty()) served.remove(item.id);
+    }
+
+    /**
+     * @return the list LiveData, that fills the cache with the loaded items
+     */
+    public LiveData<List<T>> tracked(LiveData<List<T>> source) {
+        final MediatorLiveData<List<T>> result = new MediatorLiveData<>();
+        result.addSource(source, new Observer<List<T>>() {
+            @Override
+            public void onChanged(List<T> items) {
+                if (items != null) {
+                    for (T item : items) {
+                        put(item);
+                    }
+                }
+                result.setValue(items);
+            }
+        });
+        return result;
+    }
+
+    private class Item extends MediatorLiveData<T> {
+        final long id;
+        private final LiveDataCache.Factory<T> source;
+        private boolean attached;
+
+        Item(long id, LiveDataCache.Factory<T> source) {
+            this.id = id;
+            this.source = source;
+        }
+
+        @Override
+        protected void onActive() {
+            super.onActive();
+            if (attached) return;
+            T cached = serve(this);
+            if (cached == null) attach();
+            else if (getValue() != cached) setValue(cached);
+        }
+
+        @Override
+        protected void onInactive() {
+            super.onInactive();
+            unserve(this);
+        }
+
+        // Once the source is added, it is observed as long as the LiveData lives
+        void attach() {
+            if (attached) return;
+            attached = true;
+            unserve(this);
+            addSource(source.create(), new Observer<T>() {
+                @Override
+                public void onChanged(T item) {
+                    if (item != null) put(item);
+                    else remove(id);
+                    setValue(item);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.pentabin.livingroom;
+
+import android.database.Cursor;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * FTS4 index of some text columns of a table, created by the generated database for the entities marked @Searchable.
+ * <p>
+ * The index is an external content table: it holds only the index, the text stays in the table and is not stored twice.
+ * Triggers on the table keep it in sync with every write, including the ones of other connections or processes.
+ * The update triggers only fire when an indexed column is set, the other updates such as archive leave the index as is.
+ * It is filled once from the existing rows when it is created, and dropped when the table may have been recreated
+ * by a migration, to be created again by the next open.
+ */
+public final class FullTextIndex {
+    // Prefix indexes of 2 and 3 characters, so that the first letters typed don't scan the whole term list
+    private static final String PREFIX = "2,3";
+    private static final String[] TRIGGERS = {"_bu", "_bd", "_au", "_ai"};
+
+    private FullTextIndex() {
+    }
+
+    public static String tableOf(String table) {
+        return table + "_fts";
+    }
+
+    /**
+     * Creates the index and its triggers if they don't exist, in onOpen
+     */
+    public static void create(SupportSQLiteDatabase db, String table, String... columns) {
+        String fts = tableOf(table);
+        String names = join(columns, "", ", ");
+        if (!exists(db, fts)) {
+            db.execSQL("CREATE VIRTUAL TABLE " + fts + " USING fts4(content=\"" + table + "\", "
+                    + names + ", prefix=\"" + PREFIX + "\")");
+            db.execSQL("INSERT INTO " + fts + "(" + fts + ") VALUES('rebuild')");
+        }
+        // The rows are removed before the table changes, since the index reads the old text from it
+        String remove = " BEGIN DELETE FROM " + fts + " WHERE docid = old.rowid; END";
+        String add = " BEGIN INSERT INTO " + fts + "(docid, " + names + ") VALUES (new.rowid, " + join(columns, "new.", ", ") + "); END";
+        String update = " UPDATE OF " + names + " ON " + table;
+        createTrigger(db, fts + "_bu", "BEFORE" + update + remove);
+        createTrigger(db, fts + "_bd", "BEFORE DELETE ON " + table + remove);
+        createTrigger(db, fts + "_au", "AFTER" + update + add);
+        createTrigger(db, fts + "_ai", "AFTER INSERT ON " + table + add);
+    }
+
+    // The trigger is created again if it was created differently, for example on every update by an older version
+    private static void createTrigger(SupportSQLiteDatabase db, String name, String definition) {
+        String sql = "CREATE TRIGGER " + name + " " + definition;
+        Cursor cursor = db.query("SELECT sql FROM sqlite_master WHERE type = 'trigger' AND name = ?", new Object[]{name});
+        try {
+            if (cursor.moveToNext()) {
+                if (sql.equals(cursor.getString(0))) return;
+                db.execSQL("DROP TRIGGER " + name);
+            }
+        } finally {
+            cursor.close();
+        }
+        db.execSQL(sql);
+    }
+
+    /**
+     * Drops the index and its triggers, after a migration
+     */
+    public static void drop(SupportSQLiteDatabase db, String table) {
+        String fts = tableOf(table);
+        for (String trigger : TRIGGERS) {
+            db.execSQL("DROP TRIGGER IF EXISTS " + fts + trigger);
+        }
+        db.execSQL("DROP TABLE IF EXISTS " + fts);
+    }
+
+    /**
+     * @return the MATCH expression of the words of the text, each one matched as a prefix. Null if there is no word
+     */
+    public static String match(String text) {
+        if (text == null) return null;
+        StringBuilder match = new StringBuilder();
+        for (String word : text.split("\\s+")) {
+            // A quote would end the phrase, the other special characters are only separators inside it
+            word = word.replace("\"", "");
+            if (word.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append('"').append(word).append("*\"");
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    private static boolean exists(SupportSQLiteDatabase db, String table) {
+        Cursor cursor = db.query("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?", new Object[]{table});
+        try {
+            return cursor.moveToNext();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String join(String[] columns, String prefix, String separator) {
+        StringBuilder joined = new StringBuilder();
+        for (String column : columns) {
+            if (joined.length() > 0) joined.append(separator);
+            joined.append(prefix).append(column);
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,104 @@
+package com.pentabin.livingroom;
+
+import androidx.room.RoomDatabase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * List of the rows of a table, refreshed by merging only the rows changed since the previous emission,
+ * used by getAll() when @SelectableAll(incremental = true).
+ * <p>
+ * The first load reads all the rows. After each invalidation of the table, only the rows whose updated_at
+ * (created_at if never updated) is not older than the newest one already seen are loaded, with the ordered ids
+ * and timestamps of the rows still selected, which give the removed rows and the order of the new list.
+ * The timestamps don't always move forward in commit order: they are set before the write is queued, imported,
+ * or read from a clock set back. A row selected again, or whose timestamp differs from the merged one
+ * without being newer than the ones already seen, leads to a full load.
+ */
+public abstract class IncrementalListLiveData<T extends LivingEntity> extends TableLiveData<List<T>> {
+    // Only read and replaced by compute(), called under the lock of TableLiveData
+    private Map<Long, T> rows;
+    private long lastSeen;
+
+    /**
+     * Id and last modification time, in epoch millis, of a selected row
+     */
+    public static class Stamp {
+        public final long id;
+        public final long modified;
+
+        public Stamp(long id, long modified) {
+            this.id = id;
+            this.modified = modified;
+        }
+    }
+
+    public IncrementalListLiveData(RoomDatabase database, String tableName, Executor executor) {
+        this(database, tableName, executor, 0);
+    }
+
+    /**
+     * @see TableLiveData#TableLiveData(RoomDatabase, String, Executor, long)
+     */
+    public IncrementalListLiveData(RoomDatabase database, String tableName, Executor executor, long refreshIntervalMillis) {
+        super(database, tableName, executor, refreshIntervalMillis);
+    }
+
+    /**
+     * @return all the selected rows, in order
+     */
+    protected abstract List<T> loadAll();
+
+    /**
+     * @return the selected rows whose updated_at, or created_at if null, is not older than since, in epoch millis
+     */
+    protected abstract List<T> loadChangedSince(long since);
+
+    /**
+     * @return the stamps of all the selected rows, in the same order as loadAll()
+     */
+    protected abstract List<Stamp> loadStamps();
+
+    @Override
+    protected List<T> compute() {
+        return rows == null ? reload() : merge();
+    }
+
+    private List<T> reload() {
+        return publish(loadAll(), Long.MIN_VALUE);
+    }
+
+    private List<T> merge() {
+        List<T> changed = loadChangedSince(lastSeen);
+        List<Stamp> stamps = loadStamps();
+        Map<Long, T> changedById = new HashMap<>(changed.size() * 2);
+        for (T row : changed) {
+            changedById.put(row.getId(), row);
+        }
+        List<T> merged = new ArrayList<>(stamps.size());
+        for (Stamp stamp : stamps) {
+            T row = changedById.get(stamp.id);
+            if (row == null) row = rows.get(stamp.id);
+            // Selected again, written with an older timestamp, or written between both queries
+            if (row == null || row.getLastModifiedMillis() != stamp.modified) return reload();
+            merged.add(row);
+        }
+        return publish(merged, lastSeen);
+    }
+
+    private List<T> publish(List<T> list, long seen) {
+        Map<Long, T> byId = new HashMap<>(list.size() * 2);
+        for (T row : list) {
+            byId.put(row.getId(), row);
+            seen = Math.max(seen, row.getLastModifiedMillis());
+        }
+        rows = byId;
+        lastSeen = seen;
+        return Collections.unmodifiableList(list);
+    }
+}
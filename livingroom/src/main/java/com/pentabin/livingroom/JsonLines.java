@@ -0,0 +1,84 @@
+package com.pentabin.livingroom;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Export and import of the rows of a table as JSON Lines, one object per row and per line, used by the entities marked @Exportable.
+ * <p>
+ * Both directions stream: the export writes each row as soon as it is read, the import inserts the rows by batches
+ * as they are parsed, so the memory used doesn't depend on the number of rows.
+ * The streams are not closed, they belong to the caller.
+ */
+public final class JsonLines {
+
+    public interface Adapter<T> {
+        void write(JsonWriter writer, T item) throws IOException;
+
+        T read(JsonReader reader) throws IOException;
+    }
+
+    public interface Batch<T> {
+        /**
+         * Inserts the items in a single transaction. The list is reused for the next batch
+         */
+        void insert(List<T> items);
+    }
+
+    private JsonLines() {
+    }
+
+    /**
+     * @return the number of written rows
+     */
+    public static <T> int write(OutputStream out, Iterator<T> rows, Adapter<T> adapter) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        // Lenient to write several top level values, JsonWriter doesn't buffer so the new lines can be written around it
+        JsonWriter json = new JsonWriter(writer);
+        json.setLenient(true);
+        int count = 0;
+        while (rows.hasNext()) {
+            adapter.write(json, rows.next());
+            writer.write('\n');
+            count++;
+        }
+        json.flush();
+        return count;
+    }
+
+    /**
+     * @return the number of inserted rows
+     */
+    public static <T> int read(InputStream in, Adapter<T> adapter, int batchSize, Batch<T> batch) throws IOException {
+        JsonReader json = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        json.setLenient(true);
+        List<T> items = new ArrayList<>(batchSize);
+        int count = 0;
+        while (json.peek() != JsonToken.END_DOCUMENT) {
+            items.add(adapter.read(json));
+            if (items.size() == batchSize) {
+                batch.insert(items);
+                count += items.size();
+                items.clear();
+            }
+        }
+        if (!items.isEmpty()) {
+            batch.insert(items);
+            count += items.size();
+        }
+        return count;
+    }
+}
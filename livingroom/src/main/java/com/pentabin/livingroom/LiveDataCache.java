@@ -0,0 +1,61 @@
+package com.pentabin.livingroom;
+
+import androidx.lifecycle.LiveData;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of the LiveData returned by the parameterized selects of a generated repository,
+ * keyed by the method name and the arguments.
+ * <p>
+ * Identical queries share a single Room LiveData, hence a single invalidation observer and a single
+ * query per change. Once full, the least recently used entry without observers is evicted first.
+ */
+public class LiveDataCache {
+    private final int maxEntries;
+    private final LinkedHashMap<List<?>, LiveData<?>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public interface Factory<T> {
+        LiveData<T> create();
+    }
+
+    /**
+     * @param maxEntries the number of cached LiveData, 0 to disable the cache
+     */
+    public LiveDataCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized <T> LiveData<T> get(List<?> key, Factory<T> factory) {
+        LiveData<T> liveData = (LiveData<T>) entries.get(key);
+        if (liveData != null) return liveData;
+        liveData = factory.create();
+        if (maxEntries <= 0) return liveData;
+        entries.put(key, liveData);
+        if (entries.size() > maxEntries) evict(key);
+        return liveData;
+    }
+
+    // The observed LiveData stay alive for their observers anyway, they are evicted last
+    private void evict(List<?> added) {
+        Iterator<Map.Entry<List<?>, LiveData<?>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<List<?>, LiveData<?>> entry = iterator.next();
+            if (entry.getKey() != added && !entry.getValue().hasObservers()) {
+                iterator.remove();
+                return;
+            }
+        }
+        iterator = entries.entrySet().iterator();
+        iterator.next();
+        iterator.remove();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,19 @@
+package com.pentabin.livingroom;
+
+/**
+ * The columns shared by all the LivingRoom entities, see {@link BasicEntity} and {@link BasicMillisEntity}.
+ */
+public interface LivingEntity {
+    long getId();
+
+    void setId(long id);
+
+    boolean isDeleted();
+
+    void setDeleted(boolean deleted);
+
+    /**
+     * @return updated_at, or created_at if never updated, in epoch millis. 0 if none
+     */
+    long getLastModifiedMillis();
+}
@@ -0,0 +1,94 @@
+package com.pentabin.livingroom;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The result of an asynchronous operation of a generated repository.
+ * <p>
+ * Callbacks added with {@link #addCallback(Callback)} are delivered on the main thread
+ * once the operation completes, so the caller never has to block.
+ * {@link #get()} is still available for callers that explicitly want to wait.
+ */
+public class LivingRoomFuture<T> extends FutureTask<T> {
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private final List<Callback<T>> callbacks = new ArrayList<>();
+
+    public interface Callback<T> {
+        /**
+         * @param result the value computed by the operation, null if it failed
+         * @param error the failure cause, null if the operation succeeded
+         */
+        void onComplete(T result, Throwable error);
+    }
+
+    public LivingRoomFuture(Callable<T> callable) {
+        super(callable);
+    }
+
+    public static <T> LivingRoomFuture<T> submit(Executor executor, Callable<T> callable) {
+        LivingRoomFuture<T> future = new LivingRoomFuture<>(callable);
+        executor.execute(future);
+        return future;
+    }
+
+    void complete(T result) {
+        set(result);
+    }
+
+    void fail(Throwable error) {
+        setException(error);
+    }
+
+    public LivingRoomFuture<T> addCallback(Callback<T> callback) {
+        synchronized (callbacks) {
+            if (!isDone()) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        dispatch(callback);
+        return this;
+    }
+
+    @Override
+    protected void done() {
+        List<Callback<T>> pending;
+        synchronized (callbacks) {
+            pending = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        for (Callback<T> callback : pending) {
+            dispatch(callback);
+        }
+    }
+
+    private void dispatch(final Callback<T> callback) {
+        T result = null;
+        Throwable error = null;
+        try {
+            result = get();
+        } catch (ExecutionException e) {
+            error = e.getCause();
+        } catch (InterruptedException | CancellationException e) {
+            error = e;
+        }
+        final T r = result;
+        final Throwable t = error;
+        MAIN_HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onComplete(r, t);
+            }
+        });
+    }
+}
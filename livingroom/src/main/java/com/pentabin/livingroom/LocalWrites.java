@@ -0,0 +1,110 @@
+package com.pentabin.livingroom;
+
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Tells the invalidations of a table that follow the writes of the repository from the changes made elsewhere.
+ * <p>
+ * The writes run through {@link #write(Callable)}, which marks them inside their transaction, before the commit
+ * triggers the invalidation, and only if they changed rows: a write that changes nothing is followed by no invalidation.
+ * Several writes handled by a single invalidation are all consumed by it.
+ * <p>
+ * A change made elsewhere may land in the same invalidation as a write of the repository. The invalidation is then
+ * only local if the connection counts no other change than the ones of the writes and the reset of the Room
+ * modification log, and if no other connection committed meanwhile. Otherwise it is told as a change made elsewhere,
+ * which may also happen when other tables were written meanwhile.
+ */
+public class LocalWrites {
+    private final RoomDatabase database;
+    // Counts the writes that changed rows; the invalidations up to seenVersion are handled
+    private long version;
+    private long seenVersion;
+    // total_changes() and data_version after the last write
+    private long expectedChanges;
+    private long expectedDataVersion;
+    private SupportSQLiteStatement totalChanges;
+    private SupportSQLiteStatement dataVersion;
+
+    public LocalWrites(RoomDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Runs a write of the repository in a transaction, marked as local before it commits if it changed rows
+     */
+    public <V> V write(final Callable<V> write) {
+        return database.runInTransaction(new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                long before = totalChanges();
+                V result = write.call();
+                long after = totalChanges();
+                if (after != before) marked(after, dataVersion());
+                return result;
+            }
+        });
+    }
+
+    public void write(final Runnable write) {
+        write(new Callable<Void>() {
+            @Override
+            public Void call() {
+                write.run();
+                return null;
+            }
+        });
+    }
+
+    // Read in a transaction, so on the connection of the writes
+
+    // Rows changed by the connection since it was opened, the triggers of Room included
+    private synchronized long totalChanges() {
+        if (totalChanges == null) {
+            totalChanges = database.compileStatement("SELECT total_changes()");
+        }
+        return totalChanges.simpleQueryForLong();
+    }
+
+    // Changes when another connection commits
+    private synchronized long dataVersion() {
+        if (dataVersion == null) {
+            dataVersion = database.compileStatement("PRAGMA data_version");
+        }
+        return dataVersion.simpleQueryForLong();
+    }
+
+    private synchronized void marked(long changes, long dataVersion) {
+        version++;
+        expectedChanges = changes;
+        expectedDataVersion = dataVersion;
+    }
+
+    private synchronized boolean isPending() {
+        return seenVersion != version;
+    }
+
+    /**
+     * Called by the observer of the table, off the main thread
+     *
+     * @param tables the invalidated tables given to the observer, whose rows of the Room modification log were reset
+     * @return true if the invalidation only follows writes of the repository, false if the table was changed elsewhere
+     */
+    public boolean isLocal(Set<String> tables) {
+        if (!isPending()) return false;
+        long[] counts = database.runInTransaction(new Callable<long[]>() {
+            @Override
+            public long[] call() {
+                return new long[]{totalChanges(), dataVersion()};
+            }
+        });
+        synchronized (this) {
+            if (seenVersion == version) return false;
+            seenVersion = version;
+            return counts[0] == expectedChanges + tables.size() && counts[1] == expectedDataVersion;
+        }
+    }
+}
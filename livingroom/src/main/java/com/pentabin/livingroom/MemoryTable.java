@@ -0,0 +1,320 @@
+package com.pentabin.livingroom;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
+import androidx.room.InvalidationTracker;
+import androidx.room.RoomDatabase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * Whole copy in memory of a small table, used by the repositories of the entities marked @InMemoryTable.
+ * <p>
+ * The rows are loaded once on the read executor, then indexed by id and by the declared keys.
+ * Readers get the current immutable snapshot from a volatile field, without lock nor query.
+ * The writes of the repository replace the snapshot once the dao returns, and the table is reloaded
+ * when it is changed by another connection, process or database instance.
+ * <p>
+ * The writes of the repository run through {@link #write(Callable)}, that marks them before they commit,
+ * so that their invalidations don't reload the table. The loads run one at a time, and a load that saw
+ * a newer snapshot published meanwhile, or another invalidation, is run again instead of being published.
+ */
+public class MemoryTable<T extends LivingEntity> {
+    private static final Comparator<LivingEntity> BY_ID = new Comparator<LivingEntity>() {
+        @Override
+        public int compare(LivingEntity a, LivingEntity b) {
+            return a.getId() < b.getId() ? -1 : (a.getId() == b.getId() ? 0 : 1);
+        }
+    };
+
+    public interface Key<T> {
+        Object of(T item);
+    }
+
+    private final RoomDatabase database;
+    private final String tableName;
+    private final Executor executor;
+    private final Callable<List<T>> loader;
+    private final LocalWrites localWrites;
+    private final Map<String, Key<T>> keys = new LinkedHashMap<>();
+    private final MutableLiveData<Snapshot<T>> published = new MutableLiveData<>();
+    private final Runnable load = new Runnable() {
+        @Override
+        public void run() {
+            List<T> rows;
+            long started;
+            do {
+                started = loadStarted();
+                try {
+                    rows = loader.call();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    loadFailed();
+                    return;
+                }
+            } while (!replace(rows, started));
+        }
+    };
+
+    private volatile Snapshot<T> snapshot;
+    private volatile boolean loaded;
+    // Counts the published snapshots
+    private long generation;
+    private boolean loading;
+    private boolean loadRequested;
+    private LiveData<List<T>> all;
+
+    /**
+     * @param loader loads all the rows of the table, on the executor
+     */
+    public MemoryTable(RoomDatabase database, String tableName, Executor executor, Callable<List<T>> loader) {
+        this.database = database;
+        this.tableName = tableName;
+        this.executor = executor;
+        this.loader = loader;
+        this.localWrites = new LocalWrites(database);
+        this.snapshot = new Snapshot<>(new ArrayList<T>(), keys);
+    }
+
+    /**
+     * Declares an indexed key, before {@link #load()}
+     */
+    public MemoryTable<T> index(String name, Key<T> key) {
+        keys.put(name, key);
+        return this;
+    }
+
+    public MemoryTable<T> load() {
+        final InvalidationTracker.Observer observer = new InvalidationTracker.Observer(tableName) {
+            @Override
+            public void onInvalidated(Set<String> tables) {
+                if (localWrites.isLocal(tables)) return;
+                reload();
+            }
+        };
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                database.getInvalidationTracker().addObserver(observer);
+                reload();
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Runs a write of the repository in a transaction, see {@link LocalWrites}
+     */
+    public <V> V write(Callable<V> write) {
+        return localWrites.write(write);
+    }
+
+    public void write(Runnable write) {
+        localWrites.write(write);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Lock free reads of the current snapshot
+
+    /**
+     * @return the non archived rows, in id order
+     */
+    public List<T> getAll() {
+        return snapshot.live;
+    }
+
+    public T get(long id) {
+        return snapshot.byId.get(id);
+    }
+
+    public List<T> where(String key, Object value) {
+        List<T> rows = snapshot.byKey.get(key).get(value);
+        return rows != null ? rows : Collections.<T>emptyList();
+    }
+
+    // LiveData emitting again each time the snapshot is replaced
+
+    public synchronized LiveData<List<T>> all() {
+        if (all == null) {
+            all = map(new Mapper<T, List<T>>() {
+                @Override
+                public List<T> map(Snapshot<T> s) {
+                    return s.live;
+                }
+            });
+        }
+        return all;
+    }
+
+    public LiveData<T> liveById(final long id) {
+        return map(new Mapper<T, T>() {
+            @Override
+            public T map(Snapshot<T> s) {
+                return s.byId.get(id);
+            }
+        });
+    }
+
+    public LiveData<List<T>> liveWhere(final String key, final Object value) {
+        return map(new Mapper<T, List<T>>() {
+            @Override
+            public List<T> map(Snapshot<T> s) {
+                List<T> rows = s.byKey.get(key).get(value);
+                return rows != null ? rows : Collections.<T>emptyList();
+            }
+        });
+    }
+
+    private interface Mapper<T extends LivingEntity, R> {
+        R map(Snapshot<T> s);
+    }
+
+    private <R> LiveData<R> map(final Mapper<T, R> mapper) {
+        final MediatorLiveData<R> result = new MediatorLiveData<>();
+        result.addSource(published, new Observer<Snapshot<T>>() {
+            @Override
+            public void onChanged(Snapshot<T> s) {
+                result.setValue(mapper.map(s));
+            }
+        });
+        return result;
+    }
+
+    // Write through, called after the writes of the repository once the dao returns
+
+    public Long inserted(T item, Long id) {
+        if (id != null && id > 0) {
+            item.setId(id);
+            written(Collections.singletonList(item));
+        }
+        return id;
+    }
+
+    public long[] inserted(List<T> items, long[] ids) {
+        for (int i = 0; i < ids.length && i < items.size(); i++) {
+            if (ids[i] > 0) items.get(i).setId(ids[i]);
+        }
+        written(items);
+        return ids;
+    }
+
+    public void written(T item) {
+        written(Collections.singletonList(item));
+    }
+
+    public synchronized void written(List<T> items) {
+        Map<Long, T> rows = new LinkedHashMap<>(snapshot.byId);
+        for (T item : items) {
+            if (item.getId() > 0) rows.put(item.getId(), item);
+        }
+        publish(new ArrayList<>(rows.values()));
+    }
+
+    public void removed(T item) {
+        removed(Collections.singletonList(item));
+    }
+
+    public synchronized void removed(List<T> items) {
+        Map<Long, T> rows = new LinkedHashMap<>(snapshot.byId);
+        for (T item : items) {
+            rows.remove(item.getId());
+        }
+        publish(new ArrayList<>(rows.values()));
+    }
+
+    /**
+     * Called after a statement that changed rows unknown to the repository, such as a @MutableWhere
+     */
+    public void changed() {
+        reload();
+    }
+
+    // A single load runs at a time, it is run again if it was requested meanwhile
+    private void reload() {
+        synchronized (this) {
+            loadRequested = true;
+            if (loading) return;
+            loading = true;
+        }
+        executor.execute(load);
+    }
+
+    private synchronized long loadStarted() {
+        loadRequested = false;
+        return generation;
+    }
+
+    private synchronized void loadFailed() {
+        loading = false;
+    }
+
+    /**
+     * @return false if the rows may be older than the snapshot or than a requested load: they are loaded again
+     */
+    private synchronized boolean replace(List<T> rows, long loadGeneration) {
+        if (loadGeneration != generation || loadRequested) return false;
+        publish(new ArrayList<>(rows));
+        loaded = true;
+        loading = false;
+        return true;
+    }
+
+    private void publish(List<T> rows) {
+        Collections.sort(rows, BY_ID);
+        generation++;
+        snapshot = new Snapshot<>(rows, keys);
+        published.postValue(snapshot);
+    }
+
+    // Immutable, built by the writer then published at once
+    private static final class Snapshot<T extends LivingEntity> {
+        final List<T> live;
+        final Map<Long, T> byId;
+        final Map<String, Map<Object, List<T>>> byKey;
+
+        Snapshot(List<T> rows, Map<String, Key<T>> keys) {
+            Map<Long, T> ids = new LinkedHashMap<>();
+            List<T> notArchived = new ArrayList<>();
+            Map<String, Map<Object, List<T>>> indexes = new HashMap<>();
+            for (String name : keys.keySet()) {
+                indexes.put(name, new HashMap<Object, List<T>>());
+            }
+            for (T row : rows) {
+                ids.put(row.getId(), row);
+                if (!row.isDeleted()) notArchived.add(row);
+                for (Map.Entry<String, Key<T>> key : keys.entrySet()) {
+                    Map<Object, List<T>> index = indexes.get(key.getKey());
+                    Object value = key.getValue().of(row);
+                    List<T> matches = index.get(value);
+                    if (matches == null) {
+                        matches = new ArrayList<>();
+                        index.put(value, matches);
+                    }
+                    matches.add(row);
+                }
+            }
+            for (Map<Object, List<T>> index : indexes.values()) {
+                for (Map.Entry<Object, List<T>> matches : index.entrySet()) {
+                    matches.setValue(Collections.unmodifiableList(matches.getValue()));
+                }
+            }
+            this.live = Collections.unmodifiableList(notArchived);
+            this.byId = Collections.unmodifiableMap(ids);
+            this.byKey = Collections.unmodifiableMap(indexes);
+        }
+    }
+}
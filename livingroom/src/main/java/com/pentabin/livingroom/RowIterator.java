@@ -0,0 +1,93 @@
+package com.pentabin.livingroom;
+
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the rows matching a where clause by chunks of a fixed size, used by the entities marked @Streamable.
+ * <p>
+ * Only one chunk is held in memory at a time, whatever the size of the table. Each chunk is read by its own query,
+ * the rows following the last id of the previous chunk, so the cursor is never left open between them.
+ * The iteration doesn't run in a transaction: the rows written meanwhile may be seen or not, but no row is seen twice.
+ * The chunks are loaded by the thread calling hasNext() and next(), which must not be the main thread.
+ */
+public class RowIterator<T extends LivingEntity> implements Iterator<T> {
+
+    public interface Loader<T> {
+        /**
+         * @return at most limit rows whose id is greater than afterId, in id order
+         */
+        List<T> load(long afterId, int limit);
+    }
+
+    public interface Action<T> {
+        void accept(T item);
+    }
+
+    private final int chunkSize;
+    private final Loader<T> loader;
+    private List<T> chunk = Collections.emptyList();
+    private int next;
+    private long lastId;
+    private boolean exhausted;
+
+    public RowIterator(int chunkSize, Loader<T> loader) {
+        this.chunkSize = chunkSize;
+        this.loader = loader;
+    }
+
+    /**
+     * @param where a where clause on the columns of the table, with ? placeholders for args. All the rows if null or empty
+     * @return the query of the chunk following afterId, for a @RawQuery of the dao
+     */
+    public static SupportSQLiteQuery query(String table, String where, Object[] args, long afterId, int limit) {
+        int count = args != null ? args.length : 0;
+        Object[] bindArgs = new Object[count + 1];
+        if (count > 0) System.arraycopy(args, 0, bindArgs, 0, count);
+        bindArgs[count] = afterId;
+        String filter = where == null || where.trim().isEmpty() ? "" : "(" + where + ") AND ";
+        return new SimpleSQLiteQuery("SELECT * FROM " + table + " WHERE " + filter + "id > ? ORDER BY id LIMIT " + limit, bindArgs);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next < chunk.size()) return true;
+        if (exhausted) return false;
+        // The previous chunk is released before the next one is loaded
+        chunk = Collections.emptyList();
+        chunk = loader.load(lastId, chunkSize);
+        next = 0;
+        exhausted = chunk.size() < chunkSize;
+        return !chunk.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        T item = chunk.get(next++);
+        lastId = item.getId();
+        return item;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return the number of rows given to the action
+     */
+    public int forEach(Action<T> action) {
+        int count = 0;
+        while (hasNext()) {
+            action.accept(next());
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,230 @@
+package com.pentabin.livingroom;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.InvalidationTracker;
+import androidx.room.RoomDatabase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * Row level notifications for getById, used by the repositories of the entities marked @TrackRows.
+ * <p>
+ * Room invalidates whole tables, so every getById LiveData queries its row again after any write.
+ * Here the writes of the repository are pushed only to the LiveData of the rows they touched, without query.
+ * The invalidations that don't follow a write of the repository come from another connection, process
+ * or database instance: all the observed rows are then loaded again, by one query per {@value #CHUNK_SIZE} ids.
+ * <p>
+ * The writes of the repository run through {@link #write(Callable)}, that marks them before they commit.
+ * The loads and the pushes of a row are stamped, a loaded row is dropped when a newer load or push reached it meanwhile.
+ */
+public class RowTracker<T extends LivingEntity> {
+    // Below the 999 variables allowed by SQLite in a statement
+    private static final int CHUNK_SIZE = 500;
+
+    public interface Loader<T> {
+        /**
+         * @return the rows with the given ids, in any order
+         */
+        List<T> load(List<Long> ids);
+    }
+
+    private final LocalWrites localWrites;
+    private final Executor executor;
+    private final Loader<T> loader;
+    private final Map<Long, Set<Row>> observed = new HashMap<>();
+    // The stamp of the last load or push of each observed row
+    private final Map<Long, Long> stamps = new HashMap<>();
+    private long stamp;
+
+    /**
+     * @param executor the rows are loaded on it, and the observer of the table is added on it since it may open the database
+     */
+    public RowTracker(final RoomDatabase database, String tableName, Executor executor, Loader<T> loader) {
+        this.localWrites = new LocalWrites(database);
+        this.executor = executor;
+        this.loader = loader;
+        final InvalidationTracker.Observer observer = new InvalidationTracker.Observer(tableName) {
+            @Override
+            public void onInvalidated(Set<String> tables) {
+                invalidate(tables);
+            }
+        };
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                database.getInvalidationTracker().addObserver(observer);
+            }
+        });
+    }
+
+    /**
+     * @return the LiveData of the row, loaded when it becomes active then updated only when the row changes
+     */
+    public LiveData<T> get(long id) {
+        return new Row(id);
+    }
+
+    private void invalidate(Set<String> tables) {
+        if (localWrites.isLocal(tables)) return;
+        changed();
+    }
+
+    /**
+     * Runs a write of the repository in a transaction, see {@link LocalWrites}
+     */
+    public <V> V write(Callable<V> write) {
+        return localWrites.write(write);
+    }
+
+    public void write(Runnable write) {
+        localWrites.write(write);
+    }
+
+    private void load(final List<Long> ids) {
+        if (ids.isEmpty()) return;
+        final long loadStamp = stamp(ids);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+                    List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + CHUNK_SIZE));
+                    Map<Long, T> rows = new HashMap<>();
+                    for (T row : loader.load(chunk)) {
+                        rows.put(row.getId(), row);
+                    }
+                    for (Long id : chunk) {
+                        loaded(id, rows.get(id), loadStamp);
+                    }
+                }
+            }
+        });
+    }
+
+    private synchronized long stamp(Collection<Long> ids) {
+        stamp++;
+        for (Long id : ids) {
+            if (observed.containsKey(id)) stamps.put(id, stamp);
+        }
+        return stamp;
+    }
+
+    // The row may have been read before a write of the repository that was pushed meanwhile
+    private synchronized void loaded(long id, T row, long loadStamp) {
+        Long last = stamps.get(id);
+        if (last == null || last != loadStamp) return;
+        post(id, row);
+    }
+
+    private synchronized void post(long id, T row) {
+        Set<Row> rows = observed.get(id);
+        if (rows == null) return;
+        for (Row liveData : rows) {
+            liveData.postValue(row);
+        }
+    }
+
+    private synchronized void bind(Row row) {
+        Set<Row> rows = observed.get(row.id);
+        if (rows == null) {
+            rows = new HashSet<>();
+            observed.put(row.id, rows);
+        }
+        rows.add(row);
+    }
+
+    private synchronized void unbind(Row row) {
+        Set<Row> rows = observed.get(row.id);
+        if (rows == null) return;
+        rows.remove(row);
+        if (rows.isEmpty()) {
+            observed.remove(row.id);
+            stamps.remove(row.id);
+        }
+    }
+
+    // Called after the writes of the repository, once the dao returns: the invalidation may already be handled
+
+    private synchronized void pushed(Collection<T> items, boolean removed) {
+        for (T item : items) {
+            stamp(Collections.singletonList(item.getId()));
+            post(item.getId(), removed ? null : item);
+        }
+    }
+
+    /**
+     * Called after a statement that changed rows unknown to the repository, such as a @MutableWhere
+     */
+    public synchronized void changed() {
+        load(new ArrayList<>(observed.keySet()));
+    }
+
+    public Long inserted(T item, Long id) {
+        if (id != null && id > 0) {
+            item.setId(id);
+            written(item);
+        }
+        return id;
+    }
+
+    public long[] inserted(List<T> items, long[] ids) {
+        List<T> insertedItems = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length && i < items.size(); i++) {
+            if (ids[i] > 0) {
+                items.get(i).setId(ids[i]);
+                insertedItems.add(items.get(i));
+            }
+        }
+        written(insertedItems);
+        return ids;
+    }
+
+    public void written(T item) {
+        pushed(Collections.singletonList(item), false);
+    }
+
+    public void written(List<T> items) {
+        pushed(items, false);
+    }
+
+    public void removed(T item) {
+        pushed(Collections.singletonList(item), true);
+    }
+
+    public void removed(List<T> items) {
+        pushed(items, true);
+    }
+
+    private class Row extends LiveData<T> {
+        final long id;
+
+        Row(long id) {
+            this.id = id;
+        }
+
+        @Override
+        protected void onActive() {
+            bind(this);
+            load(Collections.singletonList(id));
+        }
+
+        @Override
+        protected void onInactive() {
+            unbind(this);
+        }
+
+        // Visible to the tracker
+        @Override
+        protected void postValue(T value) {
+            super.postValue(value);
+        }
+    }
+}
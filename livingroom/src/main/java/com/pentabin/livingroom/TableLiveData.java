@@ -0,0 +1,119 @@
+package com.pentabin.livingroom;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.InvalidationTracker;
+import androidx.room.RoomDatabase;
+
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * LiveData computed again on the executor when a table changes, while it is observed.
+ * <p>
+ * With a refresh interval, the invalidations are coalesced: the first one starts the interval, and a single
+ * computation runs at its end, reading the latest state of the table. Under a burst of writes, the value is then
+ * computed at most once per interval instead of once per commit.
+ */
+public abstract class TableLiveData<T> extends LiveData<T> {
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor();
+
+    private final RoomDatabase database;
+    private final Executor executor;
+    private final long refreshIntervalMillis;
+    private final InvalidationTracker.Observer observer;
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            updateObserver();
+            refresh();
+        }
+    };
+    private final Runnable scheduledRefresh = new Runnable() {
+        @Override
+        public void run() {
+            executor.execute(refresh);
+        }
+    };
+
+    private volatile boolean active;
+    private volatile boolean invalid = true;
+    private boolean observing;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * @param executor the value is computed on it, and the observer of the table is added on it since it may open the database
+     * @param refreshIntervalMillis the minimum time between two computations caused by changes of the table, 0 for none
+     */
+    public TableLiveData(RoomDatabase database, String tableName, Executor executor, long refreshIntervalMillis) {
+        this.database = database;
+        this.executor = executor;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.observer = new InvalidationTracker.Observer(tableName) {
+            @Override
+            public void onInvalidated(Set<String> tables) {
+                invalidate();
+            }
+        };
+    }
+
+    /**
+     * @return the new value, computed on the executor
+     */
+    protected abstract T compute();
+
+    private void invalidate() {
+        invalid = true;
+        if (!active) return;
+        if (refreshIntervalMillis <= 0) {
+            executor.execute(refresh);
+            return;
+        }
+        if (scheduled.compareAndSet(false, true))
+            TIMER.schedule(scheduledRefresh, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void onActive() {
+        active = true;
+        executor.execute(refresh);
+    }
+
+    @Override
+    protected void onInactive() {
+        active = false;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                updateObserver();
+            }
+        });
+    }
+
+    // The table is observed only while the value is, the invalidations missed in between lead to a refresh
+    private synchronized void updateObserver() {
+        if (active && !observing) {
+            database.getInvalidationTracker().addObserver(observer);
+            observing = true;
+        } else if (!active && observing) {
+            database.getInvalidationTracker().removeObserver(observer);
+            observing = false;
+            invalid = true;
+        }
+    }
+
+    private synchronized void refresh() {
+        scheduled.set(false);
+        if (!invalid) return;
+        invalid = false;
+        try {
+            postValue(compute());
+        } catch (RuntimeException e) {
+            invalid = true;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.pentabin.livingroom;
+
+import androidx.room.RoomDatabase;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * Result of a query run again at most once per refresh interval while its table changes,
+ * used by the selects with a refreshIntervalMillis.
+ */
+public class ThrottledLiveData<T> extends TableLiveData<T> {
+    private final Callable<T> query;
+
+    public ThrottledLiveData(RoomDatabase database, String tableName, Executor executor, long refreshIntervalMillis, Callable<T> query) {
+        super(database, tableName, executor, refreshIntervalMillis);
+        this.query = query;
+    }
+
+    @Override
+    protected T compute() {
+        try {
+            return query.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.pentabin.livingroom;
+
+import androidx.room.RoomDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers writes submitted in bursts and runs them in a single transaction on the write executor.
+ * <p>
+ * A batch is flushed once it reaches maxBatchSize writes or windowMillis after its first write.
+ * The futures are completed after the transaction commits, so a caller never sees an id
+ * that is not yet visible to the other connections.
+ * <p>
+ * The other writes of the repository are run through {@link #execute(Runnable)}: the pending batch is committed first,
+ * so that the writes are committed in the order they were submitted, with a single write thread.
+ */
+public class WriteCoalescer implements Executor {
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor();
+
+    private final RoomDatabase database;
+    private final Executor writeExecutor;
+    private final int maxBatchSize;
+    private final long windowMillis;
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    private final Runnable scheduledFlush = new Runnable() {
+        @Override
+        public void run() {
+            writeExecutor.execute(flushTask);
+        }
+    };
+
+    private List<PendingWrite<?>> pending = new ArrayList<>();
+    private boolean flushScheduled;
+
+    public WriteCoalescer(RoomDatabase database, Executor writeExecutor, int maxBatchSize, long windowMillis) {
+        this.database = database;
+        this.writeExecutor = writeExecutor;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+    }
+
+    public <T> LivingRoomFuture<T> submit(Callable<T> write) {
+        PendingWrite<T> pendingWrite = new PendingWrite<>(write);
+        boolean flushNow = false;
+        boolean schedule = false;
+        synchronized (this) {
+            pending.add(pendingWrite);
+            if (pending.size() >= maxBatchSize) {
+                flushNow = true;
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                schedule = true;
+            }
+        }
+        if (flushNow) {
+            writeExecutor.execute(flushTask);
+        } else if (schedule) {
+            TIMER.schedule(scheduledFlush, windowMillis, TimeUnit.MILLISECONDS);
+        }
+        return pendingWrite.future;
+    }
+
+    /**
+     * Runs a write that is not coalesced on the write executor, after the writes submitted before it
+     */
+    @Override
+    public void execute(final Runnable write) {
+        final List<PendingWrite<?>> batch = takePending();
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                commit(batch);
+                write.run();
+            }
+        });
+    }
+
+    private synchronized List<PendingWrite<?>> takePending() {
+        List<PendingWrite<?>> batch = pending;
+        pending = new ArrayList<>();
+        flushScheduled = false;
+        return batch;
+    }
+
+    private void flush() {
+        commit(takePending());
+    }
+
+    private void commit(List<PendingWrite<?>> batch) {
+        // A failing write rolls back the whole transaction (Room Dao methods use nested transactions),
+        // so the failed writes are reported and the rest of the batch is committed again without them.
+        while (!batch.isEmpty()) {
+            List<PendingWrite<?>> failed = new ArrayList<>();
+            try {
+                database.beginTransaction();
+                try {
+                    for (PendingWrite<?> write : batch) {
+                        if (!write.execute()) {
+                            failed.add(write);
+                        }
+                    }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+            } catch (RuntimeException e) {
+                for (PendingWrite<?> write : batch) {
+                    write.future.fail(e);
+                }
+                return;
+            }
+            if (failed.isEmpty()) {
+                for (PendingWrite<?> write : batch) {
+                    write.complete();
+                }
+                return;
+            }
+            for (PendingWrite<?> write : failed) {
+                write.complete();
+            }
+            batch.removeAll(failed);
+        }
+    }
+
+    private static class PendingWrite<T> {
+        private final Callable<T> write;
+        private final LivingRoomFuture<T> future;
+        private T result;
+        private Throwable error;
+
+        PendingWrite(Callable<T> write) {
+            this.write = write;
+            this.future = new LivingRoomFuture<>(write);
+        }
+
+        boolean execute() {
+            try {
+                result = write.call();
+                return true;
+            } catch (Exception e) {
+                error = e;
+                return false;
+            }
+        }
+
+        void complete() {
+            if (error != null) {
+                future.fail(error);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
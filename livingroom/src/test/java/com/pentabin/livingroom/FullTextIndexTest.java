@@ -0,0 +1,36 @@
+package com.pentabin.livingroom;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FullTextIndexTest {
+    // search text, expected MATCH expression
+    private static final String[][] MATCHES = {
+            {"note", "\"note*\""},
+            {"shopping list", "\"shopping*\" \"list*\""},
+            {"  shopping \t list\n", "\"shopping*\" \"list*\""},
+            // quotes would end the phrase
+            {"say \"hello\"", "\"say*\" \"hello*\""},
+            {"\"", null},
+            // the FTS operators are only words inside the phrases
+            {"cats OR dogs", "\"cats*\" \"OR*\" \"dogs*\""},
+            {"-draft", "\"-draft*\""},
+            {"title:todo", "\"title:todo*\""},
+            {"", null},
+            {"   ", null},
+            {null, null},
+    };
+
+    @Test
+    public void match() {
+        for (String[] row : MATCHES) {
+            assertEquals(String.valueOf(row[0]), row[1], FullTextIndex.match(row[0]));
+        }
+    }
+
+    @Test
+    public void tableOf() {
+        assertEquals("Note_fts", FullTextIndex.tableOf("Note"));
+    }
+}
@@ -0,0 +1,180 @@
+package com.pentabin.livingroom;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class IncrementalListLiveDataTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    // The selected rows, in order
+    private List<TestRow> table;
+    private int fullLoads;
+    private IncrementalListLiveData<TestRow> liveData;
+
+    @Before
+    public void setUp() {
+        table = new ArrayList<>(Arrays.asList(new TestRow(1, 100), new TestRow(2, 200), new TestRow(3, 300)));
+        fullLoads = 0;
+        liveData = new IncrementalListLiveData<TestRow>(null, "TestRow", DIRECT) {
+            @Override
+            protected List<TestRow> loadAll() {
+                fullLoads++;
+                return new ArrayList<>(table);
+            }
+
+            @Override
+            protected List<TestRow> loadChangedSince(long since) {
+                List<TestRow> changed = new ArrayList<>();
+                for (TestRow row : table) {
+                    if (row.getLastModifiedMillis() >= since) changed.add(row);
+                }
+                return changed;
+            }
+
+            @Override
+            protected List<Stamp> loadStamps() {
+                List<Stamp> stamps = new ArrayList<>();
+                for (TestRow row : table) {
+                    stamps.add(new Stamp(row.getId(), row.getLastModifiedMillis()));
+                }
+                return stamps;
+            }
+        };
+    }
+
+    @Test
+    public void firstComputeLoadsAll() {
+        assertEquals(table, liveData.compute());
+        assertEquals(1, fullLoads);
+    }
+
+    @Test
+    public void mergesUpdatedRow() {
+        List<TestRow> before = liveData.compute();
+        TestRow updated = new TestRow(2, 400);
+        table.set(1, updated);
+
+        List<TestRow> after = liveData.compute();
+        assertEquals(table, after);
+        assertSame(updated, after.get(1));
+        assertSame(before.get(0), after.get(0));
+        assertEquals(1, fullLoads);
+    }
+
+    @Test
+    public void mergesInsertedRow() {
+        liveData.compute();
+        TestRow inserted = new TestRow(4, 500);
+        table.add(0, inserted);
+
+        List<TestRow> after = liveData.compute();
+        assertEquals(table, after);
+        assertSame(inserted, after.get(0));
+        assertEquals(1, fullLoads);
+    }
+
+    @Test
+    public void dropsDeletedRow() {
+        liveData.compute();
+        table.remove(1);
+
+        List<TestRow> after = liveData.compute();
+        assertEquals(Arrays.asList(1L, 3L), Arrays.asList(after.get(0).getId(), after.get(1).getId()));
+        assertEquals(1, fullLoads);
+    }
+
+    @Test
+    public void followsReorder() {
+        List<TestRow> before = liveData.compute();
+        table = new ArrayList<>(Arrays.asList(table.get(2), table.get(0), table.get(1)));
+
+        List<TestRow> after = liveData.compute();
+        assertEquals(table, after);
+        assertSame(before.get(2), after.get(0));
+        assertEquals(1, fullLoads);
+    }
+
+    @Test
+    public void reloadsRowSelectedWithOlderTimestamp() {
+        liveData.compute();
+        // Inserted by another device, older than the newest row already seen
+        table.add(new TestRow(4, 50));
+
+        List<TestRow> after = liveData.compute();
+        assertEquals(table, after);
+        assertEquals(2, fullLoads);
+    }
+
+    @Test
+    public void reloadsRowUpdatedWithOlderTimestamp() {
+        liveData.compute();
+        // Stamped before another write that committed first, or imported
+        TestRow updated = new TestRow(3, 250);
+        table.set(2, updated);
+
+        List<TestRow> after = liveData.compute();
+        assertEquals(table, after);
+        assertSame(updated, after.get(2));
+        assertEquals(2, fullLoads);
+    }
+
+    @Test
+    public void reloadsRowWrittenBetweenQueries() {
+        final List<TestRow> before = liveData.compute();
+        final TestRow updated = new TestRow(1, 700);
+        IncrementalListLiveData<TestRow> racing = new IncrementalListLiveData<TestRow>(null, "TestRow", DIRECT) {
+            private boolean merged;
+
+            @Override
+            protected List<TestRow> loadAll() {
+                fullLoads++;
+                return new ArrayList<>(table);
+            }
+
+            @Override
+            protected List<TestRow> loadChangedSince(long since) {
+                merged = true;
+                return new ArrayList<>();
+            }
+
+            @Override
+            protected List<Stamp> loadStamps() {
+                List<Stamp> stamps = new ArrayList<>();
+                // Committed after the changed rows were read
+                if (merged) table.set(0, updated);
+                for (TestRow row : table) {
+                    stamps.add(new Stamp(row.getId(), row.getLastModifiedMillis()));
+                }
+                return stamps;
+            }
+        };
+        racing.compute();
+
+        List<TestRow> after = racing.compute();
+        assertSame(updated, after.get(0));
+        assertEquals(before.size(), after.size());
+    }
+
+    @Test
+    public void keepsMergingAfterReload() {
+        liveData.compute();
+        table.add(new TestRow(4, 50));
+        liveData.compute();
+        table.set(0, new TestRow(1, 600));
+
+        assertEquals(table, liveData.compute());
+        assertEquals(2, fullLoads);
+    }
+}
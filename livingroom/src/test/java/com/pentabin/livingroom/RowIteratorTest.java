@@ -0,0 +1,142 @@
+package com.pentabin.livingroom;
+
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.*;
+
+public class RowIteratorTest {
+    // The rows of the table, in id order
+    private List<TestRow> table;
+    // The afterId of each chunk loaded
+    private List<Long> loads;
+
+    @Before
+    public void setUp() {
+        table = new ArrayList<>();
+        loads = new ArrayList<>();
+    }
+
+    private void fill(long... ids) {
+        for (long id : ids) {
+            table.add(new TestRow(id, 0));
+        }
+    }
+
+    private RowIterator<TestRow> iterator(int chunkSize) {
+        return new RowIterator<>(chunkSize, new RowIterator.Loader<TestRow>() {
+            @Override
+            public List<TestRow> load(long afterId, int limit) {
+                loads.add(afterId);
+                List<TestRow> chunk = new ArrayList<>();
+                for (TestRow row : table) {
+                    if (row.getId() > afterId && chunk.size() < limit) chunk.add(row);
+                }
+                return chunk;
+            }
+        });
+    }
+
+    private static List<Long> ids(RowIterator<TestRow> iterator) {
+        List<Long> ids = new ArrayList<>();
+        while (iterator.hasNext()) {
+            ids.add(iterator.next().getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void loadsChunksAfterLastId() {
+        fill(1, 2, 5, 8, 9, 12, 20);
+
+        assertEquals(Arrays.asList(1L, 2L, 5L, 8L, 9L, 12L, 20L), ids(iterator(3)));
+        // The last chunk is not full, so no empty chunk is loaded after it
+        assertEquals(Arrays.asList(0L, 5L, 12L), loads);
+    }
+
+    @Test
+    public void loadsEmptyChunkAfterFullOne() {
+        fill(1, 2, 3, 4, 5, 6);
+
+        assertEquals(6, ids(iterator(3)).size());
+        assertEquals(Arrays.asList(0L, 3L, 6L), loads);
+    }
+
+    @Test
+    public void emptyTable() {
+        RowIterator<TestRow> iterator = iterator(3);
+
+        assertFalse(iterator.hasNext());
+        assertFalse(iterator.hasNext());
+        assertEquals(1, loads.size());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void nextAfterLastRow() {
+        fill(1);
+        RowIterator<TestRow> iterator = iterator(3);
+        iterator.next();
+        iterator.next();
+    }
+
+    @Test
+    public void hasNextLoadsOnce() {
+        fill(1, 2);
+        RowIterator<TestRow> iterator = iterator(2);
+
+        assertTrue(iterator.hasNext());
+        assertTrue(iterator.hasNext());
+        assertEquals(1, loads.size());
+    }
+
+    @Test
+    public void seesRowsWrittenBetweenChunks() {
+        fill(1, 2, 3, 4);
+        RowIterator<TestRow> iterator = iterator(2);
+        List<Long> ids = new ArrayList<>();
+        ids.add(iterator.next().getId());
+        ids.add(iterator.next().getId());
+        // Deleted before its chunk is loaded, and inserted after the rows already seen
+        table.remove(2);
+        fill(10);
+        table.add(0, new TestRow(0, 0));
+
+        ids.addAll(ids(iterator));
+        assertEquals(Arrays.asList(1L, 2L, 4L, 10L), ids);
+    }
+
+    @Test
+    public void forEachCountsRows() {
+        fill(1, 2, 3, 4, 5);
+        final List<Long> ids = new ArrayList<>();
+
+        int count = iterator(2).forEach(new RowIterator.Action<TestRow>() {
+            @Override
+            public void accept(TestRow item) {
+                ids.add(item.getId());
+            }
+        });
+        assertEquals(5, count);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), ids);
+    }
+
+    @Test
+    public void query() {
+        SupportSQLiteQuery all = RowIterator.query("Note", null, null, 0, 500);
+        assertEquals("SELECT * FROM Note WHERE id > ? ORDER BY id LIMIT 500", all.getSql());
+        assertEquals(1, all.getArgCount());
+
+        SupportSQLiteQuery filtered = RowIterator.query("Note", "isDeleted = ? OR title = ?", new Object[]{0, "a"}, 42, 100);
+        assertEquals("SELECT * FROM Note WHERE (isDeleted = ? OR title = ?) AND id > ? ORDER BY id LIMIT 100", filtered.getSql());
+        assertEquals(3, filtered.getArgCount());
+
+        assertEquals(all.getSql(), RowIterator.query("Note", "  ", null, 0, 500).getSql());
+    }
+}
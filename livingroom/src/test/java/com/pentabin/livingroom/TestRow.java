@@ -0,0 +1,17 @@
+package com.pentabin.livingroom;
+
+/**
+ * Row of the unit tests, with an id and a last modification time in epoch millis
+ */
+class TestRow extends BasicMillisEntity {
+
+    TestRow(long id, long modified) {
+        setId(id);
+        setCreated_at(modified);
+    }
+
+    @Override
+    public String toString() {
+        return "TestRow " + getId() + " @" + getLastModifiedMillis();
+    }
+}
@@ -0,0 +1,180 @@
+package com.pentabin.livingroom;
+
+import androidx.room.DatabaseConfiguration;
+import androidx.room.InvalidationTracker;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class WriteCoalescerTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    private static final long NEVER = 60_000;
+
+    private FakeDatabase database;
+
+    /**
+     * Keeps the values written in a transaction, committed unless a write failed in it, as a Room dao does
+     */
+    private static class FakeDatabase extends RoomDatabase {
+        final List<String> committed = new ArrayList<>();
+        final List<String> pending = new ArrayList<>();
+        int transactions;
+        boolean failing;
+        private boolean rolledBack;
+        private boolean successful;
+
+        Callable<String> write(final String value) {
+            return new Callable<String>() {
+                @Override
+                public String call() {
+                    pending.add(value);
+                    return value;
+                }
+            };
+        }
+
+        Callable<String> failingWrite() {
+            return new Callable<String>() {
+                @Override
+                public String call() {
+                    rolledBack = true;
+                    throw new IllegalStateException("constraint");
+                }
+            };
+        }
+
+        @Override
+        public void beginTransaction() {
+            if (failing) throw new IllegalStateException("disk full");
+            transactions++;
+            rolledBack = false;
+            successful = false;
+        }
+
+        @Override
+        public void setTransactionSuccessful() {
+            successful = true;
+        }
+
+        @Override
+        public void endTransaction() {
+            if (successful && !rolledBack) committed.addAll(pending);
+            pending.clear();
+        }
+
+        @Override
+        protected SupportSQLiteOpenHelper createOpenHelper(DatabaseConfiguration config) {
+            return null;
+        }
+
+        @Override
+        protected InvalidationTracker createInvalidationTracker() {
+            return null;
+        }
+
+        @Override
+        public void clearAllTables() {
+        }
+    }
+
+    @Before
+    public void setUp() {
+        database = new FakeDatabase();
+    }
+
+    @Test
+    public void commitsFullBatchInOneTransaction() throws Exception {
+        WriteCoalescer coalescer = new WriteCoalescer(database, DIRECT, 3, NEVER);
+        LivingRoomFuture<String> a = coalescer.submit(database.write("a"));
+        LivingRoomFuture<String> b = coalescer.submit(database.write("b"));
+        assertFalse(a.isDone());
+        LivingRoomFuture<String> c = coalescer.submit(database.write("c"));
+
+        assertEquals(Arrays.asList("a", "b", "c"), database.committed);
+        assertEquals(1, database.transactions);
+        assertEquals("a", a.get());
+        assertEquals("b", b.get());
+        assertEquals("c", c.get());
+    }
+
+    @Test
+    public void retriesBatchWithoutFailedWrite() throws Exception {
+        WriteCoalescer coalescer = new WriteCoalescer(database, DIRECT, 3, NEVER);
+        LivingRoomFuture<String> a = coalescer.submit(database.write("a"));
+        LivingRoomFuture<String> failed = coalescer.submit(database.failingWrite());
+        LivingRoomFuture<String> c = coalescer.submit(database.write("c"));
+
+        assertEquals(Arrays.asList("a", "c"), database.committed);
+        assertEquals(2, database.transactions);
+        assertEquals("a", a.get());
+        assertEquals("c", c.get());
+        try {
+            failed.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void retriesUntilNoWriteFails() throws Exception {
+        WriteCoalescer coalescer = new WriteCoalescer(database, DIRECT, 4, NEVER);
+        coalescer.submit(database.failingWrite());
+        LivingRoomFuture<String> b = coalescer.submit(database.write("b"));
+        coalescer.submit(database.failingWrite());
+        coalescer.submit(database.write("d"));
+
+        assertEquals(Arrays.asList("b", "d"), database.committed);
+        assertEquals(2, database.transactions);
+        assertEquals("b", b.get());
+    }
+
+    @Test
+    public void failsBatchWhenTransactionFails() throws Exception {
+        WriteCoalescer coalescer = new WriteCoalescer(database, DIRECT, 2, NEVER);
+        database.failing = true;
+        LivingRoomFuture<String> a = coalescer.submit(database.write("a"));
+        LivingRoomFuture<String> b = coalescer.submit(database.write("b"));
+
+        assertTrue(database.committed.isEmpty());
+        for (LivingRoomFuture<String> future : Arrays.asList(a, b)) {
+            try {
+                future.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertEquals("disk full", e.getCause().getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void directWriteRunsAfterPendingBatch() throws Exception {
+        WriteCoalescer coalescer = new WriteCoalescer(database, DIRECT, 10, NEVER);
+        LivingRoomFuture<String> a = coalescer.submit(database.write("a"));
+        coalescer.execute(new Runnable() {
+            @Override
+            public void run() {
+                database.committed.add("direct");
+            }
+        });
+
+        assertEquals(Arrays.asList("a", "direct"), database.committed);
+        assertEquals("a", a.get());
+    }
+}